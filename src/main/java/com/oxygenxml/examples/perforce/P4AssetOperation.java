@@ -0,0 +1,333 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.oxygenxml.examples.perforce.P4ContentCache.CachedFile;
+import com.perforce.p4java.PropertyDefs;
+import com.perforce.p4java.core.file.FileAction;
+import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
+import com.perforce.p4java.core.file.IExtendedFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.exception.RequestException;
+import com.perforce.p4java.option.server.GetExtendedFilesOptions;
+import com.perforce.p4java.option.server.GetFileContentsOptions;
+import com.perforce.p4java.server.IOptionsServer;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads large files, either streamed from <code>p4 print</code> as the
+ * content arrives or from the local {@link P4ContentCache}, e.g. when only a
+ * byte range is needed.
+ * <p>
+ * P4Java writes the output of <code>p4 print</code> to a temporary file and
+ * returns it only when complete. The temporary file is created in a directory
+ * of the content cache, given to the server as its temporary directory, and
+ * followed while it's being written. Then it's moved to the cache, so the
+ * content is written to disk once.
+ */
+@Slf4j
+public class P4AssetOperation extends P4Operation {
+
+	/**
+	 * The content cache shared by all the users, 1 GB at most.
+	 */
+	static final P4ContentCache contentCache = new P4ContentCache(
+			new File(System.getProperty("java.io.tmpdir"), "webAuthP4Content"), 1024L * 1024 * 1024);
+
+	/**
+	 * Time to wait for more content of a file being printed, in milliseconds.
+	 */
+	private static final long FOLLOW_INTERVAL = 20;
+
+	/**
+	 * Maximum number of files printed at the same time, the other prints wait
+	 * in a queue.
+	 */
+	private static final int MAX_PRINTS = 8;
+
+	private static final ExecutorService printExecutor = createPrintExecutor();
+
+	private IOptionsServer server;
+	private String depotPath;
+
+	private PasswordAuthentication credentials;
+
+	/**
+	 * The temporary directory of the server, created only if the revision is
+	 * printed.
+	 */
+	private File printDir;
+
+	private P4ProgressCallback progress = new P4ProgressCallback();
+
+	/**
+	 * The resolved revision, e.g. "//depot/image.png#3".
+	 */
+	@Getter
+	private String revision;
+
+	/**
+	 * The revision number.
+	 */
+	@Getter
+	private int revisionNumber;
+
+	/**
+	 * The size of the file in the depot. The printed content of text files may
+	 * have a different size, because of keyword expansion and line end or
+	 * charset translation.
+	 */
+	@Getter
+	private long size;
+
+	/**
+	 * Whether the file type is binary, i.e. it is printed as stored.
+	 */
+	@Getter
+	private boolean binary;
+
+	public P4AssetOperation(String uriString, PasswordAuthentication credentials) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+			// the path may carry a #rev or @change specifier
+			this.depotPath = P4Utils.getFileSpec(uri);
+
+			this.credentials = credentials;
+
+			// P4Java reads its temporary directory from the properties the
+			// server is created with.
+			this.printDir = contentCache.newDownloadDirectory();
+			Properties props = new Properties();
+			props.setProperty(PropertyDefs.P4JAVA_TMP_DIR_KEY, printDir.getPath());
+			this.server = getOptionsServer(props, null);
+			this.server.registerProgressCallback(progress);
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create asset operation", e);
+		}
+	}
+
+	/**
+	 * Logs in and resolves the revision to read, its size and type
+	 * (<code>p4 fstat -Ol</code>). This also checks that the user can read the
+	 * file before anything is served from the cache.
+	 */
+	public void connect() throws P4JavaException {
+		log.debug("Working server URI: {}", serverUri);
+
+		login(server, credentials);
+
+		List<IExtendedFileSpec> files = server.getExtendedFiles(FileSpecBuilder.makeFileSpecList(depotPath),
+				new GetExtendedFilesOptions("-Ol"));
+		if (files != null) {
+			for (IExtendedFileSpec file : files) {
+				if (file != null && file.getOpStatus() == FileSpecOpStatus.VALID
+						&& file.getHeadAction() != FileAction.DELETE && file.getHeadAction() != FileAction.MOVE_DELETE) {
+					revisionNumber = file.getHeadRev();
+					revision = file.getDepotPathString() + "#" + revisionNumber;
+					size = file.getFileSize();
+					// e.g. binary, binary+F, ubinary
+					binary = file.getHeadType() != null && file.getHeadType().contains("binary");
+					return;
+				}
+			}
+		}
+		throw new RequestException("No such file: " + depotPath);
+	}
+
+	public void disconnect() throws P4JavaException {
+		server.disconnect();
+	}
+
+	/**
+	 * @return the revision from the local cache, downloading it first if
+	 *         needed. It must be closed after use.
+	 */
+	public CachedFile getCachedFile() throws P4JavaException, IOException {
+		CachedFile cached = contentCache.get(getCacheKey());
+		return cached != null ? cached : print(null);
+	}
+
+	/**
+	 * Copies the revision to the output stream, from the cache if possible,
+	 * otherwise from <code>p4 print</code> as the content arrives. In the
+	 * latter case the content is added to the cache.
+	 */
+	public void streamTo(OutputStream out) throws P4JavaException, IOException {
+		try (CachedFile cached = contentCache.get(getCacheKey())) {
+			if (cached != null) {
+				log.debug("Streaming {} from cache", revision);
+				Files.copy(cached.getFile().toPath(), out);
+				return;
+			}
+		}
+
+		print(out).close();
+	}
+
+	/**
+	 * Prints the revision to the content cache.
+	 *
+	 * @param out
+	 *            receives the content while it's printed, may be
+	 *            <code>null</code>.
+	 *
+	 * @return the cached file, to be closed after use.
+	 */
+	private CachedFile print(OutputStream out) throws P4JavaException, IOException {
+		Files.createDirectories(printDir.toPath());
+		Future<InputStream> printing = printExecutor.submit(() -> {
+			InputStream in = server.getFileContents(FileSpecBuilder.makeFileSpecList(revision),
+					new GetFileContentsOptions(false, true));
+			if (in == null) {
+				throw new RequestException("Could not print " + revision);
+			}
+			return in;
+		});
+
+		try {
+			if (out != null) {
+				follow(printDir, printing, out);
+			}
+			getPrinted(printing);
+
+			File printed = findPrintedFile(printDir);
+			if (printed == null) {
+				throw new RequestException("Could not print " + revision);
+			}
+			CachedFile cached = contentCache.put(getCacheKey(), printed);
+			log.debug("Cached {}", revision);
+			return cached;
+		} catch (IOException e) {
+			// e.g. the client went away, stop the transfer.
+			progress.cancel();
+			throw e;
+		} finally {
+			closePrinted(printing);
+			FileUtils.deleteQuietly(printDir);
+		}
+	}
+
+	/**
+	 * Copies the file being printed to the output stream until the print ends.
+	 */
+	static void follow(File printDir, Future<InputStream> printing, OutputStream out) throws IOException {
+		WritableByteChannel target = Channels.newChannel(out);
+		FileChannel channel = null;
+		long position = 0;
+		try {
+			while (true) {
+				// checked first, so that the content is copied completely after the print ended.
+				boolean done = printing.isDone();
+				if (channel == null) {
+					File printed = findPrintedFile(printDir);
+					if (printed != null) {
+						channel = FileChannel.open(printed.toPath(), StandardOpenOption.READ);
+					}
+				}
+
+				long copied = 0;
+				if (channel != null) {
+					long available = channel.size() - position;
+					while (copied < available) {
+						copied += channel.transferTo(position + copied, available - copied, target);
+					}
+					position += copied;
+				}
+
+				if (done) {
+					break;
+				}
+				if (copied == 0) {
+					try {
+						Thread.sleep(FOLLOW_INTERVAL);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(channel);
+		}
+	}
+
+	/**
+	 * @return the temporary file P4Java prints to, <code>null</code> if not
+	 *         created yet.
+	 */
+	static File findPrintedFile(File printDir) {
+		File[] files = printDir.listFiles();
+		return files != null && files.length > 0 ? files[0] : null;
+	}
+
+	/**
+	 * Waits for the print to end and reports its failure.
+	 */
+	private static void getPrinted(Future<InputStream> printing) throws P4JavaException, IOException {
+		try {
+			printing.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof P4JavaException) {
+				throw (P4JavaException) e.getCause();
+			}
+			throw new P4JavaException(e.getCause());
+		}
+	}
+
+	/**
+	 * Waits for the print to end and releases its temporary file.
+	 */
+	private static void closePrinted(Future<InputStream> printing) {
+		try {
+			IOUtils.closeQuietly(printing.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// already reported by getPrinted()
+		}
+	}
+
+	private static ExecutorService createPrintExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PRINTS, MAX_PRINTS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder().setNameFormat("p4-print-%d").setDaemon(true).build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private String getCacheKey() {
+		return serverUri + "\n" + revision;
+	}
+
+}
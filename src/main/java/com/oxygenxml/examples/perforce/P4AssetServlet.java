@@ -0,0 +1,143 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.PasswordAuthentication;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.exception.RequestException;
+
+import lombok.extern.slf4j.Slf4j;
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+
+/**
+ * Serves large files, e.g. images and other binary assets, without loading
+ * them in memory.
+ * <p>
+ * GET url=the file URL
+ * <p>
+ * Byte ranges are served from the local content cache, the whole file is
+ * streamed from <code>p4 print</code> as it arrives when it is not cached yet.
+ * The ETag is the revision number.
+ */
+@Slf4j
+public class P4AssetServlet extends WebappServletPluginExtension {
+
+	@Override
+	public void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		String url = httpRequest.getParameter("url");
+		if (!P4Utils.isServerUrl(url)) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		PasswordAuthentication userCredentials = PerforceUrlStreamHandler.getCredentials(userId, url);
+		if (userCredentials == null) {
+			httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		P4AssetOperation assetOp = new P4AssetOperation(url, userCredentials);
+		try {
+			assetOp.connect();
+		} catch (RequestException e) {
+			log.debug("Could not find {}", url, e);
+			httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		} catch (P4JavaException e) {
+			log.error("Could not read {}", url, e);
+			httpResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			return;
+		}
+
+		try {
+			String eTag = "\"" + assetOp.getRevisionNumber() + "\"";
+			httpResponse.setHeader("ETag", eTag);
+			httpResponse.setHeader("Accept-Ranges", "bytes");
+			httpResponse.setHeader("Cache-Control", "private, no-cache");
+			if (eTag.equals(httpRequest.getHeader("If-None-Match"))) {
+				httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+
+			String contentType = URLConnection.guessContentTypeFromName(assetOp.getRevision().replaceFirst("#.*", ""));
+			httpResponse.setContentType(contentType != null ? contentType : "application/octet-stream");
+
+			String rangeHeader = httpRequest.getHeader("Range");
+			String ifRange = httpRequest.getHeader("If-Range");
+			if (rangeHeader != null && (ifRange == null || ifRange.equals(eTag))) {
+				// the ranges refer to the printed content, whose size is known
+				// for sure only once cached.
+				try (P4ContentCache.CachedFile cached = assetOp.getCachedFile()) {
+					long size = cached.getLength();
+					long[] range = P4Utils.parseRange(rangeHeader, size);
+					if (range == null) {
+						httpResponse.setHeader("Content-Range", "bytes */" + size);
+						httpResponse.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+						return;
+					}
+
+					long length = range[1] - range[0] + 1;
+					httpResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+					httpResponse.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+					httpResponse.setHeader("Content-Length", Long.toString(length));
+					sendFile(cached.getFile(), range[0], length, httpResponse.getOutputStream());
+				}
+			} else {
+				if (assetOp.isBinary()) {
+					// text files may be expanded or translated when printed
+					httpResponse.setHeader("Content-Length", Long.toString(assetOp.getSize()));
+				}
+				assetOp.streamTo(httpResponse.getOutputStream());
+			}
+		} catch (P4JavaException e) {
+			log.error("Could not read {}", url, e);
+			if (!httpResponse.isCommitted()) {
+				httpResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			}
+		} finally {
+			try {
+				assetOp.disconnect();
+			} catch (P4JavaException e) {
+				log.debug("Could not disconnect", e);
+			}
+		}
+	}
+
+	/**
+	 * Copies a part of the file to the response, letting the file channel
+	 * transfer it without copying it to the heap where possible.
+	 */
+	private static void sendFile(File file, long start, long length, OutputStream out) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			WritableByteChannel target = Channels.newChannel(out);
+			long position = start;
+			long end = start + length;
+			while (position < end) {
+				long transferred = channel.transferTo(position, end - position, target);
+				if (transferred <= 0) {
+					throw new IOException("Unexpected end of " + file);
+				}
+				position += transferred;
+			}
+		}
+	}
+
+	@Override
+	public String getPath() {
+		return "p4asset";
+	}
+
+}
@@ -0,0 +1,218 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.File;
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.ChangelistStatus;
+import com.perforce.p4java.core.IChangelist;
+import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.exception.RequestException;
+import com.perforce.p4java.impl.generic.client.ClientView;
+import com.perforce.p4java.impl.generic.core.Changelist;
+import com.perforce.p4java.impl.generic.core.file.FileSpec;
+import com.perforce.p4java.impl.mapbased.client.Client;
+import com.perforce.p4java.impl.mapbased.server.Server;
+import com.perforce.p4java.option.client.CopyFilesOptions;
+import com.perforce.p4java.option.client.DeleteFilesOptions;
+import com.perforce.p4java.option.client.EditFilesOptions;
+import com.perforce.p4java.option.client.RevertFilesOptions;
+import com.perforce.p4java.option.client.SyncOptions;
+import com.perforce.p4java.option.server.MoveFileOptions;
+import com.perforce.p4java.server.IOptionsServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies, moves or deletes a whole depot folder in a single changelist. All the
+ * commands run server side (<code>-k</code>/<code>-v</code>), no file content
+ * is transferred to the webapp.
+ */
+@Slf4j
+public class P4BulkOperation extends P4Operation {
+
+	public enum Action {
+		COPY, MOVE, DELETE
+	}
+
+	private IOptionsServer server;
+	private String sourcePath;
+
+	private PasswordAuthentication credentials;
+
+	private P4ProgressCallback progress;
+
+	public P4BulkOperation(String uriString, PasswordAuthentication credentials, P4ProgressCallback progress) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+			sourcePath = uri.getPath();
+
+			this.credentials = credentials;
+			this.progress = progress;
+
+			server = getOptionsServer(null, null);
+			server.registerProgressCallback(progress);
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create bulk operation", e);
+		}
+	}
+
+	/**
+	 * Runs the action on the source folder.
+	 *
+	 * @param action
+	 *            the action to perform.
+	 * @param targetPath
+	 *            the depot path of the target folder, ignored for
+	 *            {@link Action#DELETE}.
+	 *
+	 * @return the submitted files.
+	 *
+	 * @throws P4JavaException
+	 *             when any of the files could not be processed or the
+	 *             operation was cancelled. Nothing is submitted in this case.
+	 */
+	public List<IFileSpec> run(Action action, String targetPath) throws P4JavaException {
+		log.info("{} {} to {} on {}", action, sourcePath, targetPath, serverUri);
+
+		login(server, credentials);
+
+		String source = P4Utils.folderSpec(sourcePath);
+		String target = action == Action.DELETE ? null : P4Utils.folderSpec(targetPath);
+
+		IClient client = createTempClient(source, target);
+		server.createClient(client);
+		server.setCurrentClient(client);
+		log.debug("Created temp client {}", client.getName());
+
+		int changelistId = IChangelist.UNKNOWN;
+		try {
+			Changelist changeListImpl = new Changelist(IChangelist.UNKNOWN, client.getName(), server.getUserName(),
+					ChangelistStatus.NEW, new Date(), action.name().toLowerCase() + " by webapp author", false,
+					(Server) server);
+			IChangelist changelist = client.createChangelist(changeListImpl);
+			changelistId = changelist.getId();
+
+			List<IFileSpec> opened;
+			switch (action) {
+			case COPY:
+				opened = client.copyFiles(new FileSpec(source), new FileSpec(target), null,
+						new CopyFilesOptions().setChangelistId(changelistId).setNoClientSyncOrMod(true));
+				break;
+			case MOVE:
+				// move requires the source files to be opened for edit, the
+				// have-list is updated without transferring any content.
+				client.sync(FileSpecBuilder.makeFileSpecList(source), new SyncOptions().setClientBypass(true));
+				checkCancelled();
+				checkFileSpecs(client.editFiles(FileSpecBuilder.makeFileSpecList(source),
+						new EditFilesOptions().setChangelistId(changelistId).setBypassClientUpdate(true)));
+				checkCancelled();
+				opened = server.moveFile(new FileSpec(source), new FileSpec(target),
+						new MoveFileOptions().setChangelistId(changelistId).setNoClientMove(true));
+				break;
+			case DELETE:
+				opened = client.deleteFiles(FileSpecBuilder.makeFileSpecList(source),
+						new DeleteFilesOptions().setChangelistId(changelistId).setDeleteNonSyncedFiles(true));
+				break;
+			default:
+				throw new IllegalArgumentException(action.name());
+			}
+			checkFileSpecs(opened);
+			// a cancelled command returns the files processed so far, the
+			// changelist must not be submitted partially.
+			checkCancelled();
+
+			changelist.refresh();
+			List<IFileSpec> submitted = new ArrayList<>();
+			List<IFileSpec> submitFiles = changelist.submit(false);
+			if (submitFiles != null) {
+				for (IFileSpec fileSpec : submitFiles) {
+					if (fileSpec != null && fileSpec.getOpStatus() == FileSpecOpStatus.VALID) {
+						submitted.add(fileSpec);
+					}
+				}
+			}
+			checkFileSpecs(submitFiles);
+			log.info("Submitted {} files in changelist {}", submitted.size(), changelist.getId());
+			return submitted;
+		} finally {
+			// a cancelled callback would stop the cleanup commands too
+			server.registerProgressCallback(null);
+			if (changelistId != IChangelist.UNKNOWN) {
+				revertChangelist(client, changelistId);
+			}
+			// removes the pending changelist and the client
+			P4Utils.deleteClient(server, client);
+			server.disconnect();
+		}
+	}
+
+	/**
+	 * Reverts the files left opened by a failed or cancelled run, the pending
+	 * changelist and the client can't be deleted otherwise.
+	 */
+	private static void revertChangelist(IClient client, int changelistId) {
+		try {
+			client.revertFiles(FileSpecBuilder.makeFileSpecList("//..."),
+					new RevertFilesOptions().setChangelistId(changelistId).setNoClientRefresh(true));
+		} catch (P4JavaException e) {
+			log.warn("Could not revert the files of changelist {} of client {}", changelistId, client.getName(), e);
+		}
+	}
+
+	/**
+	 * Fails if the operation was cancelled through the progress callback.
+	 */
+	private void checkCancelled() throws RequestException {
+		if (progress.isCancelled()) {
+			throw new RequestException("The operation was cancelled");
+		}
+	}
+
+	/**
+	 * Fails on the first error reported by the server.
+	 */
+	private static void checkFileSpecs(List<IFileSpec> fileSpecs) throws RequestException {
+		if (fileSpecs != null) {
+			for (IFileSpec fileSpec : fileSpecs) {
+				if (fileSpec != null) {
+					if (fileSpec.getOpStatus() == FileSpecOpStatus.ERROR) {
+						throw new RequestException(fileSpec.getStatusMessage());
+					} else if (fileSpec.getOpStatus() == FileSpecOpStatus.INFO) {
+						log.debug(fileSpec.getStatusMessage());
+					}
+				}
+			}
+		}
+	}
+
+	private IClient createTempClient(String source, String target) {
+		String p4User = server.getUserName();
+		String tmpClientName = "webAuthP4" + p4User + "_bulk" + UUID.randomUUID().toString();
+
+		IClient client = new Client(server);
+		client.setName(tmpClientName);
+		client.setRoot(new File(System.getProperty("java.io.tmpdir"), tmpClientName).getAbsolutePath());
+		client.setOwnerName(p4User);
+		client.setServer(server);
+
+		ClientView mapping = new ClientView();
+		mapping.addEntry(new ClientView.ClientViewMapping(0, source, "//" + tmpClientName + "/source/..."));
+		if (target != null) {
+			mapping.addEntry(new ClientView.ClientViewMapping(1, target, "//" + tmpClientName + "/target/..."));
+		}
+		client.setClientView(mapping);
+		return client;
+	}
+
+}
@@ -0,0 +1,152 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.perforce.p4java.core.file.IFileSpec;
+
+import lombok.extern.slf4j.Slf4j;
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+
+/**
+ * Copies, moves or deletes depot folders in a single changelist.
+ * <ul>
+ * <li>POST action=copy|move|delete, url=source folder URL, target=target folder
+ * URL - starts the operation and returns its id</li>
+ * <li>GET id=operation id - returns the progress of the operation, its status
+ * is running, done, error or cancelled</li>
+ * <li>POST action=cancel, id=operation id - stops the operation</li>
+ * </ul>
+ */
+@Slf4j
+public class P4BulkServlet extends WebappServletPluginExtension {
+
+	/**
+	 * The state of a running bulk operation.
+	 */
+	private static class BulkJob {
+		final P4ProgressCallback progress = new P4ProgressCallback();
+		volatile String status = "running";
+		volatile String message;
+		volatile int submitted;
+	}
+
+	/**
+	 * Running and recently finished operations, keyed by session and operation
+	 * id.
+	 */
+	private static final Cache<String, BulkJob> jobs = CacheBuilder.newBuilder().concurrencyLevel(10)
+			.maximumSize(1000).expireAfterWrite(1, TimeUnit.HOURS).build();
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(4,
+			new ThreadFactoryBuilder().setNameFormat("p4-bulk-%d").setDaemon(true).build());
+
+	@Override
+	public void doPost(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		String action = httpRequest.getParameter("action");
+
+		if ("cancel".equals(action)) {
+			BulkJob job = jobs.getIfPresent(userId + httpRequest.getParameter("id"));
+			if (job != null) {
+				job.progress.cancel();
+			}
+			return;
+		}
+
+		P4BulkOperation.Action bulkAction;
+		try {
+			bulkAction = P4BulkOperation.Action.valueOf(String.valueOf(action).toUpperCase());
+		} catch (IllegalArgumentException e) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		String url = httpRequest.getParameter("url");
+		if (!P4Utils.isServerUrl(url)) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		String targetPath = null;
+		if (bulkAction != P4BulkOperation.Action.DELETE) {
+			try {
+				targetPath = new URI(httpRequest.getParameter("target")).getPath();
+			} catch (URISyntaxException | NullPointerException e) {
+				httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			}
+		}
+
+		PasswordAuthentication userCredentials = PerforceUrlStreamHandler.getCredentials(userId, url);
+		if (userCredentials == null) {
+			httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		String id = UUID.randomUUID().toString();
+		BulkJob job = new BulkJob();
+		jobs.put(userId + id, job);
+
+		String target = targetPath;
+		executor.execute(() -> {
+			try {
+				List<IFileSpec> submitted = new P4BulkOperation(url, userCredentials, job.progress).run(bulkAction,
+						target);
+				job.submitted = submitted.size();
+				job.status = "done";
+			} catch (Exception e) {
+				if (job.progress.isCancelled()) {
+					log.info("Bulk {} of {} cancelled", bulkAction, url);
+					job.status = "cancelled";
+					return;
+				}
+				log.error("Bulk {} of {} failed", bulkAction, url, e);
+				job.message = e.getMessage();
+				job.status = "error";
+			}
+		});
+
+		httpResponse.setContentType("application/json");
+		httpResponse.getWriter().write("{\"id\":" + P4Utils.toJsonString(id) + "}");
+	}
+
+	@Override
+	public void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		BulkJob job = jobs.getIfPresent(userId + httpRequest.getParameter("id"));
+		if (job == null) {
+			httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		httpResponse.setContentType("application/json");
+		httpResponse.getWriter()
+				.write("{\"status\":" + P4Utils.toJsonString(job.status)
+						+ ",\"ticks\":" + job.progress.getTicks()
+						+ ",\"file\":" + P4Utils.toJsonString(job.progress.getLastTickMarker())
+						+ ",\"submitted\":" + job.submitted
+						+ ",\"message\":" + P4Utils.toJsonString(job.message) + "}");
+	}
+
+	@Override
+	public String getPath() {
+		return "p4bulk";
+	}
+
+}
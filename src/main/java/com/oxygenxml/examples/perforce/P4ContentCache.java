@@ -0,0 +1,189 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local disk cache of file revisions, so that byte ranges of large assets and
+ * the revisions addressed by number can be served without transferring the
+ * whole file from the server each time.
+ * The least recently used files are evicted when the cache exceeds its size.
+ * An evicted file is deleted only after all its readers closed it.
+ * <p>
+ * The entries are keyed by file revision, the callers must make sure the user
+ * can read the revision before serving it from the cache.
+ */
+@Slf4j
+public class P4ContentCache {
+
+	/**
+	 * A file of the cache.
+	 */
+	private static class Entry {
+		final File file;
+		final long length;
+		/**
+		 * Number of {@link CachedFile}s not closed yet, guarded by the cache.
+		 */
+		int readers;
+		boolean evicted;
+
+		Entry(File file) {
+			this.file = file;
+			this.length = file.length();
+		}
+	}
+
+	/**
+	 * A cached file in use, it stays on disk until closed.
+	 */
+	public class CachedFile implements Closeable {
+		private final Entry entry;
+		private boolean closed;
+
+		private CachedFile(Entry entry) {
+			this.entry = entry;
+		}
+
+		public File getFile() {
+			return entry.file;
+		}
+
+		/**
+		 * @return the size of the file in bytes.
+		 */
+		public long getLength() {
+			return entry.length;
+		}
+
+		/**
+		 * @return a stream reading the file, closing it also closes this
+		 *         cached file.
+		 */
+		public InputStream openStream() throws IOException {
+			return new FileInputStream(entry.file) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						CachedFile.this.close();
+					}
+				}
+			};
+		}
+
+		@Override
+		public void close() {
+			synchronized (P4ContentCache.this) {
+				if (!closed) {
+					closed = true;
+					entry.readers--;
+					deleteIfUnused(entry);
+				}
+			}
+		}
+	}
+
+	@Getter
+	private final File dir;
+
+	private final Cache<String, Entry> files;
+
+	public P4ContentCache(File dir, long maxSize) {
+		this.dir = dir;
+		// the index is not persisted, the files left by a previous run are useless.
+		FileUtils.deleteQuietly(dir);
+
+		// a single segment since Guava splits the maximum weight between the
+		// segments, which would limit the size of a cached file to a fraction
+		// of it.
+		this.files = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maxSize)
+				.weigher((String key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.length))
+				.removalListener(this::onRemoval).build();
+	}
+
+	/**
+	 * @return the cached content of the revision, to be closed after use, or
+	 *         <code>null</code>.
+	 */
+	public synchronized CachedFile get(String key) {
+		Entry entry = files.getIfPresent(key);
+		if (entry == null) {
+			return null;
+		}
+		if (!entry.file.exists()) {
+			log.warn("Cached file {} of {} is missing", entry.file, key);
+			files.invalidate(key);
+			return null;
+		}
+		entry.readers++;
+		return new CachedFile(entry);
+	}
+
+	/**
+	 * @return a new directory to download a revision to, before adding it
+	 *         with {@link #put(String, File)}. It's not created yet, so that
+	 *         it can be chosen before knowing whether a download is needed.
+	 */
+	public File newDownloadDirectory() {
+		return new File(dir, "print" + UUID.randomUUID());
+	}
+
+	/**
+	 * Adds a completely downloaded revision to the cache.
+	 *
+	 * @param key
+	 *            identifies the revision.
+	 * @param downloadedFile
+	 *            the content, moved to the cache.
+	 *
+	 * @return the cached file, to be closed after use.
+	 */
+	public CachedFile put(String key, File downloadedFile) throws IOException {
+		File file = new File(dir, UUID.randomUUID().toString());
+		try {
+			Files.move(downloadedFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the file may still be open, e.g. on Windows
+			log.debug("Could not move {}, copying it", downloadedFile, e);
+			Files.copy(downloadedFile.toPath(), file.toPath());
+		}
+
+		Entry entry = new Entry(file);
+		synchronized (this) {
+			// acquired before being visible, an immediate eviction must not delete it.
+			entry.readers = 1;
+		}
+		files.put(key, entry);
+		return new CachedFile(entry);
+	}
+
+	private synchronized void onRemoval(RemovalNotification<String, Entry> removal) {
+		log.debug("Removed {} from the content cache: {}", removal.getKey(), removal.getCause());
+		removal.getValue().evicted = true;
+		deleteIfUnused(removal.getValue());
+	}
+
+	private void deleteIfUnused(Entry entry) {
+		if (entry.evicted && entry.readers == 0 && !entry.file.delete() && entry.file.exists()) {
+			log.warn("Could not delete {}", entry.file);
+		}
+	}
+
+}
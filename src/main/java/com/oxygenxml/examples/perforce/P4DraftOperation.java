@@ -0,0 +1,359 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.client.IClientViewMapping;
+import com.perforce.p4java.core.ChangelistStatus;
+import com.perforce.p4java.core.IChangelist;
+import com.perforce.p4java.core.IChangelistSummary;
+import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
+import com.perforce.p4java.core.file.IExtendedFileSpec;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.exception.RequestException;
+import com.perforce.p4java.impl.generic.client.ClientView;
+import com.perforce.p4java.impl.generic.core.Changelist;
+import com.perforce.p4java.impl.mapbased.client.Client;
+import com.perforce.p4java.impl.mapbased.server.Server;
+import com.perforce.p4java.option.client.RevertFilesOptions;
+import com.perforce.p4java.option.client.ShelveFilesOptions;
+import com.perforce.p4java.option.server.GetChangelistsOptions;
+import com.perforce.p4java.option.server.GetExtendedFilesOptions;
+import com.perforce.p4java.option.server.GetFileContentsOptions;
+import com.perforce.p4java.option.server.OpenedFilesOptions;
+import com.perforce.p4java.server.IOptionsServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Draft (autosave) mode. Instead of submitting a new depot revision on every
+ * save, the content is shelved in a per-user pending changelist using
+ * <code>p4 shelve -r</code>. The shelf is submitted as one revision only when
+ * the user explicitly commits it.
+ */
+@Slf4j
+public class P4DraftOperation extends P4Operation {
+
+	/**
+	 * Description of the per-user pending changelist holding the draft shelf.
+	 */
+	static final String DRAFT_DESCRIPTION = "draft saved by webapp author";
+
+	private IOptionsServer server;
+	private String depotPath;
+
+	private PasswordAuthentication credentials;
+
+	public P4DraftOperation(String uriString, PasswordAuthentication credentials) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+			depotPath = uri.getPath();
+
+			this.credentials = credentials;
+
+			server = getOptionsServer(null, null);
+			server.registerProgressCallback(new P4ProgressCallback());
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create draft operation", e);
+		}
+	}
+
+	/**
+	 * Stores the passed in content in the user's draft shelf, replacing the
+	 * previously shelved version of the file.
+	 *
+	 * @param content
+	 *            the file content.
+	 */
+	public void shelve(byte[] content) {
+		try {
+			connect();
+
+			IClient client = getDraftClient();
+			File localFile = mapDepotPath(client, depotPath);
+			int changelistId = getDraftChangelistId(client, true);
+
+			FileUtils.writeByteArrayToFile(localFile, content);
+			if (!isOpened(client, changelistId)) {
+				if (P4Utils.p4FileExists(server, depotPath)) {
+					// "flush" the file (sync -k) and open it for edit
+					client.sync(FileSpecBuilder.makeFileSpecList(depotPath), false, false, true, false);
+					client.editFiles(FileSpecBuilder.makeFileSpecList(depotPath), false, false, changelistId, null);
+				} else {
+					client.addFiles(FileSpecBuilder.makeFileSpecList(depotPath), false, changelistId, null, false);
+				}
+			}
+			restoreOpenedFiles(client, changelistId);
+
+			// shelve -r: the shelf mirrors the files opened in the draft changelist
+			List<IFileSpec> shelvedFiles = client.shelveFiles(null, changelistId,
+					new ShelveFilesOptions().setReplaceFiles(true));
+			logFileSpecs(shelvedFiles);
+			log.info("Shelved {} in draft changelist {}", depotPath, changelistId);
+
+			server.disconnect();
+		} catch (Exception e) {
+			log.error("P4 draft operation to {} failed", depotPath, e);
+		}
+	}
+
+	/**
+	 * Submits the user's draft shelf as a single changelist.
+	 *
+	 * @return the submitted file specs, or <code>null</code> if there was no
+	 *         draft to submit.
+	 *
+	 * @throws P4JavaException
+	 *             when the submit fails.
+	 */
+	public List<IFileSpec> commit() throws P4JavaException {
+		connect();
+
+		IClient client = server.getClient(getDraftClientName(credentials.getUserName()));
+		if (client == null) {
+			log.debug("No draft client for user {}", credentials.getUserName());
+			return null;
+		}
+		server.setCurrentClient(client);
+
+		int changelistId = getDraftChangelistId(client, false);
+		if (changelistId == IChangelist.UNKNOWN) {
+			log.debug("No draft changelist for user {}", credentials.getUserName());
+			return null;
+		}
+
+		// submit -e requires the shelved files not to be opened, keep the
+		// local copies though.
+		client.revertFiles(FileSpecBuilder.makeFileSpecList("//..."),
+				new RevertFilesOptions().setChangelistId(changelistId).setNoClientRefresh(true));
+		List<IFileSpec> submitted = client.submitShelvedChangelist(changelistId);
+		logFileSpecs(submitted);
+		log.info("Submitted draft changelist {}", changelistId);
+
+		server.disconnect();
+		return submitted;
+	}
+
+	/**
+	 * Finds the id of the given user's draft changelist (requires a connected
+	 * server).
+	 *
+	 * @return the changelist id or {@link IChangelist#UNKNOWN} if the user has
+	 *         no draft.
+	 */
+	static int findDraftChangelistId(IOptionsServer server, String userName) throws P4JavaException {
+		List<IChangelistSummary> pending = server.getChangelists(null,
+				new GetChangelistsOptions().setType(IChangelist.Type.PENDING).setUserName(userName)
+						.setClientName(getDraftClientName(userName)));
+		if (pending != null) {
+			for (IChangelistSummary c : pending) {
+				if (c != null && c.getDescription() != null && c.getDescription().trim().equals(DRAFT_DESCRIPTION)) {
+					return c.getId();
+				}
+			}
+		}
+		return IChangelist.UNKNOWN;
+	}
+
+	static String getDraftClientName(String userName) {
+		return "webAuthP4Draft_" + userName;
+	}
+
+	private void connect() throws P4JavaException {
+		log.debug("Working server URI: {}", serverUri);
+
+		login(server, credentials);
+	}
+
+	/**
+	 * Returns the persistent client used for the user's drafts, creating it if
+	 * needed. Unlike the temporary clients of {@link P4WriteOperation} it must
+	 * survive between saves since it owns the shelved changelist.
+	 */
+	private IClient getDraftClient() throws P4JavaException {
+		String p4User = server.getUserName();
+		String clientName = getDraftClientName(p4User);
+
+		IClient client = server.getClient(clientName);
+		if (client == null) {
+			File root = new File(System.getProperty("java.io.tmpdir"), "webAuthP4Drafts" + File.separator + p4User);
+			client = new Client(server);
+			client.setName(clientName);
+			client.setRoot(root.getAbsolutePath());
+			client.setOwnerName(p4User);
+			client.setServer(server);
+
+			// seed the view with the file being saved, an empty view is not
+			// accepted by every server version.
+			ClientView mapping = new ClientView();
+			mapping.addEntry(new ClientView.ClientViewMapping(0, depotPath,
+					"//" + clientName + "/" + depotPath.substring(2)));
+			client.setClientView(mapping);
+
+			server.createClient(client);
+			client = server.getClient(clientName);
+			log.debug("Created draft client {}", clientName);
+		}
+		server.setCurrentClient(client);
+		return client;
+	}
+
+	/**
+	 * Makes sure the depot path is mapped by the draft client.
+	 *
+	 * @return the local file the depot path maps to.
+	 */
+	private File mapDepotPath(IClient client, String destination) throws P4JavaException {
+		String relativePath = destination.substring(2);
+		ClientView view = client.getClientView();
+		if (view == null) {
+			view = new ClientView();
+			client.setClientView(view);
+		}
+
+		boolean mapped = false;
+		for (IClientViewMapping mapping : view) {
+			if (destination.equals(mapping.getDepotSpec())) {
+				mapped = true;
+				break;
+			}
+		}
+		if (!mapped) {
+			view.addEntry(new ClientView.ClientViewMapping(view.getSize(), destination,
+					"//" + client.getName() + "/" + relativePath));
+			client.update();
+			log.debug("Mapped {} in draft client {}", destination, client.getName());
+		}
+
+		return new File(client.getRoot(), relativePath);
+	}
+
+	private int getDraftChangelistId(IClient client, boolean create) throws P4JavaException {
+		int changelistId = findDraftChangelistId(server, server.getUserName());
+		if (changelistId == IChangelist.UNKNOWN && create) {
+			Changelist changeListImpl = new Changelist(IChangelist.UNKNOWN, client.getName(), server.getUserName(),
+					ChangelistStatus.NEW, new Date(), DRAFT_DESCRIPTION, false, (Server) server);
+			changelistId = client.createChangelist(changeListImpl).getId();
+			log.debug("Created draft changelist {}", changelistId);
+		}
+		return changelistId;
+	}
+
+	/**
+	 * Makes sure all the files opened in the draft changelist exist in the
+	 * client root, since <code>shelve -r</code> shelves them all. The local
+	 * copies are lost after a restart, a cleanup of the temporary folder or
+	 * when the previous drafts were saved on another node. They are restored
+	 * from the shelf (<code>p4 print file@=change</code>), the files that were
+	 * never shelved are reverted.
+	 */
+	private void restoreOpenedFiles(IClient client, int changelistId) throws P4JavaException, IOException {
+		List<IFileSpec> opened = client.openedFiles(null, new OpenedFilesOptions().setChangelistId(changelistId));
+		List<IFileSpec> openedFiles = new ArrayList<>();
+		if (opened != null) {
+			for (IFileSpec fileSpec : opened) {
+				if (fileSpec != null && fileSpec.getOpStatus() == FileSpecOpStatus.VALID) {
+					openedFiles.addAll(FileSpecBuilder.makeFileSpecList(fileSpec.getDepotPathString()));
+				}
+			}
+		}
+		if (openedFiles.isEmpty()) {
+			return;
+		}
+
+		Set<String> shelved = null;
+		for (IFileSpec location : client.where(openedFiles)) {
+			if (location == null || location.getOpStatus() != FileSpecOpStatus.VALID
+					|| location.getLocalPathString() == null) {
+				continue;
+			}
+			File localFile = new File(location.getLocalPathString());
+			if (localFile.exists()) {
+				continue;
+			}
+
+			String depotFile = location.getDepotPathString();
+			if (shelved == null) {
+				shelved = getShelvedFiles(changelistId);
+			}
+			if (shelved.contains(depotFile)) {
+				log.debug("Restoring {} from draft changelist {}", depotFile, changelistId);
+				try (InputStream in = server.getFileContents(
+						FileSpecBuilder.makeFileSpecList(depotFile + "@=" + changelistId),
+						new GetFileContentsOptions(false, true))) {
+					if (in == null) {
+						throw new RequestException("Could not restore " + depotFile + " from the draft shelf");
+					}
+					FileUtils.copyInputStreamToFile(in, localFile);
+				}
+			} else {
+				log.warn("{} is missing and was never shelved, reverting it", depotFile);
+				client.revertFiles(FileSpecBuilder.makeFileSpecList(depotFile),
+						new RevertFilesOptions().setChangelistId(changelistId).setNoClientRefresh(true));
+			}
+		}
+	}
+
+	/**
+	 * @return the depot paths of the files shelved in the changelist
+	 *         (<code>p4 fstat -Rs -e change</code>).
+	 */
+	private Set<String> getShelvedFiles(int changelistId) throws P4JavaException {
+		Set<String> shelved = new HashSet<>();
+		List<IExtendedFileSpec> files = server.getExtendedFiles(FileSpecBuilder.makeFileSpecList("//..."),
+				new GetExtendedFilesOptions("-Rs", "-e", String.valueOf(changelistId)));
+		if (files != null) {
+			for (IExtendedFileSpec file : files) {
+				if (file != null && file.getOpStatus() == FileSpecOpStatus.VALID) {
+					shelved.add(file.getDepotPathString());
+				}
+			}
+		}
+		return shelved;
+	}
+
+	private boolean isOpened(IClient client, int changelistId) throws P4JavaException {
+		List<IFileSpec> opened = client.openedFiles(FileSpecBuilder.makeFileSpecList(depotPath),
+				new OpenedFilesOptions().setChangelistId(changelistId));
+		if (opened != null) {
+			for (IFileSpec fileSpec : opened) {
+				if (fileSpec != null && fileSpec.getOpStatus() == FileSpecOpStatus.VALID) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void logFileSpecs(List<IFileSpec> fileSpecs) throws RequestException {
+		if (fileSpecs != null) {
+			for (IFileSpec fileSpec : fileSpecs) {
+				if (fileSpec != null) {
+					if (fileSpec.getOpStatus() == FileSpecOpStatus.VALID) {
+						log.debug("{}", fileSpec.getDepotPathString());
+					} else if (fileSpec.getOpStatus() == FileSpecOpStatus.ERROR) {
+						throw new RequestException(fileSpec.getStatusMessage());
+					} else {
+						log.debug(fileSpec.getStatusMessage());
+					}
+				}
+			}
+		}
+	}
+
+}
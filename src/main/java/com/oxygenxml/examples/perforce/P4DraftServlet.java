@@ -0,0 +1,69 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+
+import lombok.extern.slf4j.Slf4j;
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+
+/**
+ * Toggles the draft mode of the current session and submits the user's draft
+ * shelf.
+ * <ul>
+ * <li>action=enable - saves are shelved instead of submitted</li>
+ * <li>action=disable - saves are submitted again, the shelf is kept</li>
+ * <li>action=commit - submits the shelf of the given server as one
+ * revision</li>
+ * </ul>
+ */
+@Slf4j
+public class P4DraftServlet extends WebappServletPluginExtension {
+
+	@Override
+	public void doPost(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		String action = httpRequest.getParameter("action");
+
+		if ("enable".equals(action)) {
+			PerforceUrlStreamHandler.draftSessions.put(userId, Boolean.TRUE);
+		} else if ("disable".equals(action)) {
+			PerforceUrlStreamHandler.draftSessions.invalidate(userId);
+		} else if ("commit".equals(action)) {
+			String url = httpRequest.getParameter("url");
+			if (!P4Utils.isServerUrl(url)) {
+				httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			}
+			PasswordAuthentication userCredentials = PerforceUrlStreamHandler.getCredentials(userId, url);
+			if (userCredentials == null) {
+				httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+				return;
+			}
+
+			try {
+				List<IFileSpec> submitted = new P4DraftOperation(url, userCredentials).commit();
+				log.debug("Draft of session {} committed: {}", userId, submitted != null);
+			} catch (P4JavaException e) {
+				log.error("Could not commit draft to {}", url, e);
+				httpResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			}
+		} else {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+		}
+	}
+
+	@Override
+	public String getPath() {
+		return "p4draft";
+	}
+
+}
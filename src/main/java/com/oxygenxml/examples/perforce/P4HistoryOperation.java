@@ -0,0 +1,103 @@
+package com.oxygenxml.examples.perforce;
+
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
+
+import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.IFileRevisionData;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.option.server.GetRevisionHistoryOptions;
+import com.perforce.p4java.server.IOptionsServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads one page of the history of a file (<code>p4 filelog -m</code>), so
+ * that files with many revisions don't need the whole filelog.
+ */
+@Slf4j
+public class P4HistoryOperation extends P4Operation {
+
+	private IOptionsServer server;
+	private String depotPath;
+
+	private PasswordAuthentication credentials;
+
+	public P4HistoryOperation(String uriString, PasswordAuthentication credentials) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+			// the history of a revision URL is the history of the file.
+			this.depotPath = P4Utils.stripRevisionSpecifier(uri.getPath());
+
+			this.credentials = credentials;
+
+			this.server = getOptionsServer(null, null);
+			this.server.registerProgressCallback(new P4ProgressCallback());
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create history operation", e);
+		}
+	}
+
+	/**
+	 * Lists the revisions older than the given one, newest first.
+	 *
+	 * @param before
+	 *            the revisions before this one are listed, 0 to start with the
+	 *            head revision.
+	 * @param pageSize
+	 *            the maximum number of revisions to list.
+	 *
+	 * @return the page as JSON:
+	 *         <code>{"revisions": [{"rev": 3, "change": 1234, "action": "edit", "date": 1500000000000, "user": "bob", "description": "...", "url": "..."}], "next": 2}</code>
+	 *         where <code>next</code> is the value of <code>before</code> for
+	 *         the next page, <code>null</code> on the last page.
+	 */
+	public String getHistory(int before, int pageSize) throws P4JavaException {
+		try {
+			login(server, credentials);
+
+			String fileSpec = before > 0 ? depotPath + "#" + (before - 1) : depotPath;
+			StringBuilder json = new StringBuilder("{\"revisions\":[");
+			int oldest = 0;
+			if (before != 1) {
+				Map<IFileSpec, List<IFileRevisionData>> history = server.getRevisionHistory(
+						FileSpecBuilder.makeFileSpecList(fileSpec), new GetRevisionHistoryOptions().setMaxRevs(pageSize));
+
+				boolean first = true;
+				for (List<IFileRevisionData> revisions : history.values()) {
+					if (revisions == null) {
+						continue;
+					}
+					for (IFileRevisionData revision : revisions) {
+						if (!first) {
+							json.append(",");
+						}
+						first = false;
+						oldest = revision.getRevision();
+						json.append("{\"rev\":").append(revision.getRevision())
+								.append(",\"change\":").append(revision.getChangelistId())
+								.append(",\"action\":").append(P4Utils.toJsonString(
+										revision.getAction() != null ? revision.getAction().toString() : null))
+								.append(",\"date\":").append(revision.getDate() != null ? revision.getDate().getTime() : 0)
+								.append(",\"user\":").append(P4Utils.toJsonString(revision.getUserName()))
+								.append(",\"description\":").append(P4Utils.toJsonString(revision.getDescription()))
+								// '#' would start the URL fragment, encode it
+								.append(",\"url\":").append(P4Utils.toJsonString(
+										serverUri + revision.getDepotFileName() + "%23" + revision.getRevision()))
+								.append("}");
+					}
+				}
+			}
+			json.append("],\"next\":").append(oldest > 1 ? String.valueOf(oldest) : "null").append("}");
+			return json.toString();
+		} finally {
+			server.disconnect();
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.perforce.p4java.exception.P4JavaException;
+
+import lombok.extern.slf4j.Slf4j;
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+
+/**
+ * Returns the history of a file one page at a time, see
+ * {@link P4HistoryOperation#getHistory(int, int)}.
+ * <p>
+ * GET url=the file URL, before=the revision to continue from (optional),
+ * size=page size (optional)
+ * <p>
+ * The pages continuing from a given revision list existing revisions only, so
+ * they never change and the browser may cache them indefinitely.
+ */
+@Slf4j
+public class P4HistoryServlet extends WebappServletPluginExtension {
+
+	static final int DEFAULT_PAGE_SIZE = 50;
+	static final int MAX_PAGE_SIZE = 500;
+
+	@Override
+	public void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		String url = httpRequest.getParameter("url");
+		int before;
+		int pageSize;
+		try {
+			before = getIntParameter(httpRequest, "before", 0);
+			pageSize = Math.min(getIntParameter(httpRequest, "size", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+		} catch (NumberFormatException e) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+		if (!P4Utils.isServerUrl(url) || before < 0 || pageSize < 1) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		PasswordAuthentication userCredentials = PerforceUrlStreamHandler.getCredentials(userId, url);
+		if (userCredentials == null) {
+			httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		try {
+			String history = new P4HistoryOperation(url, userCredentials).getHistory(before, pageSize);
+			if (before > 0) {
+				httpResponse.setHeader("Cache-Control", "private, max-age=31536000, immutable");
+			} else {
+				// the first page changes with every submit
+				httpResponse.setHeader("Cache-Control", "private, no-cache");
+			}
+			httpResponse.setContentType("application/json");
+			httpResponse.setCharacterEncoding("UTF-8");
+			httpResponse.getWriter().write(history);
+		} catch (P4JavaException e) {
+			log.error("Could not read the history of {}", url, e);
+			httpResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+		}
+	}
+
+	private static int getIntParameter(HttpServletRequest httpRequest, String name, int defaultValue) {
+		String value = httpRequest.getParameter(name);
+		return value != null ? Integer.parseInt(value) : defaultValue;
+	}
+
+	@Override
+	public String getPath() {
+		return "p4history";
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.oxygenxml.examples.perforce;
+
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.server.IOptionsServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tells whether a URL points to a file or a folder and the root of its depot.
+ * The latest change submitted under the URL identifies the version of the
+ * info, so it can be used as ETag. The folder listings are not computed nor
+ * cached here.
+ */
+@Slf4j
+public class P4ListOperation extends P4Operation {
+
+	private IOptionsServer server;
+	private String depotPath;
+
+	private PasswordAuthentication credentials;
+
+	/**
+	 * Whether the URL points to a file, known after {@link #getETag()}.
+	 */
+	private boolean file;
+
+	public P4ListOperation(String uriString, PasswordAuthentication credentials) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+			this.depotPath = uri.getPath();
+
+			this.credentials = credentials;
+
+			this.server = getOptionsServer(null, null);
+			this.server.registerProgressCallback(new P4ProgressCallback());
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create list operation", e);
+		}
+	}
+
+	public void connect() throws P4JavaException {
+		log.debug("Working server URI: {}", serverUri);
+
+		login(server, credentials);
+	}
+
+	public void disconnect() throws P4JavaException {
+		server.disconnect();
+	}
+
+	/**
+	 * @return the ETag of the URL info: the latest change
+	 *         submitted under the URL.
+	 */
+	public String getETag() throws P4JavaException {
+		file = !isRoot() && !depotPath.endsWith("/") && P4Utils.p4FileExists(server, depotPath);
+		String path = file ? depotPath : isRoot() ? "//..." : P4Utils.folderSpec(depotPath);
+		return "\"" + P4Utils.getLatestChange(server, path) + "\"";
+	}
+
+	/**
+	 * @return the URL info as JSON:
+	 *         <code>{"type": "FOLDER", "rootUrl": "p4java://server:1666//depot/"}</code>
+	 */
+	public String list() {
+		return "{\"type\":\"" + (file ? "FILE" : "FOLDER") + "\",\"rootUrl\":"
+				+ P4Utils.toJsonString(serverUri.toString() + getDepotRoot()) + "}";
+	}
+
+	private boolean isRoot() {
+		return depotPath.isEmpty() || "/".equals(depotPath) || "//".equals(depotPath);
+	}
+
+	/**
+	 * @return the depot of the path, e.g. "//depot/".
+	 */
+	private String getDepotRoot() {
+		if (isRoot()) {
+			return "//";
+		}
+		int depotEnd = depotPath.indexOf('/', 2);
+		return depotEnd == -1 ? depotPath + "/" : depotPath.substring(0, depotEnd + 1);
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.IOException;
+import java.net.PasswordAuthentication;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.perforce.p4java.exception.P4JavaException;
+
+import lombok.extern.slf4j.Slf4j;
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+
+/**
+ * Returns the URL info of a p4 URL: whether it's a file or a folder and the
+ * root of its depot. The folder listings are not served nor cached here. The
+ * response carries the latest change submitted under the URL as ETag,
+ * requests sending it back in <code>If-None-Match</code> get a 304 as long as
+ * nothing was submitted there.
+ * <p>
+ * GET url=the file or folder URL
+ */
+@Slf4j
+public class P4ListServlet extends WebappServletPluginExtension {
+
+	@Override
+	public void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		String url = httpRequest.getParameter("url");
+		if (!P4Utils.isServerUrl(url)) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		PasswordAuthentication userCredentials = PerforceUrlStreamHandler.getCredentials(userId, url);
+		if (userCredentials == null) {
+			httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		P4ListOperation listOp = new P4ListOperation(url, userCredentials);
+		try {
+			listOp.connect();
+			String etag = listOp.getETag();
+			// the browser must always revalidate, the change number is cheap to compute.
+			httpResponse.setHeader("Cache-Control", "private, no-cache");
+			httpResponse.setHeader("ETag", etag);
+			if (etag.equals(httpRequest.getHeader("If-None-Match"))) {
+				log.debug("URL info of {} not modified", url);
+				httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+
+			String info = listOp.list();
+			httpResponse.setContentType("application/json");
+			httpResponse.setCharacterEncoding("UTF-8");
+			httpResponse.getWriter().write(info);
+		} catch (P4JavaException e) {
+			log.error("Could not list {}", url, e);
+			httpResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+		} finally {
+			try {
+				listOp.disconnect();
+			} catch (P4JavaException e) {
+				log.debug("Could not disconnect", e);
+			}
+		}
+	}
+
+	@Override
+	public String getPath() {
+		return "p4list";
+	}
+
+}
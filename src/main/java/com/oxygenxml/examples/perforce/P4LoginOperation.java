@@ -0,0 +1,92 @@
+package com.oxygenxml.examples.perforce;
+
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.server.IOptionsServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs in with the password of the user to obtain a ticket that can be
+ * persisted in the {@link P4TicketStore}.
+ */
+@Slf4j
+public class P4LoginOperation extends P4Operation {
+
+	/**
+	 * The output of <code>p4 login -s</code>, e.g. "User bob ticket expires in
+	 * 11 hours 59 minutes."
+	 */
+	private static final Pattern EXPIRES = Pattern.compile("expires in (\\d+) hours? (\\d+) minutes?");
+
+	/**
+	 * The output of <code>p4 login -s</code> for a valid ticket.
+	 */
+	private static final Pattern LOGGED_IN = Pattern.compile("^User \\S+ ticket ");
+
+	/**
+	 * The default ticket timeout of the server, used if the login status can't
+	 * be parsed.
+	 */
+	private static final long DEFAULT_TIMEOUT = TimeUnit.HOURS.toMillis(12);
+
+	private IOptionsServer server;
+
+	private PasswordAuthentication credentials;
+
+	public P4LoginOperation(String uriString, PasswordAuthentication credentials) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+
+			this.credentials = credentials;
+
+			this.server = getOptionsServer(null, null);
+			this.server.registerProgressCallback(new P4ProgressCallback());
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create login operation", e);
+		}
+	}
+
+	/**
+	 * @return the ticket obtained for the user.
+	 */
+	public P4TicketStore.Ticket login() throws P4JavaException {
+		login(server, credentials);
+		try {
+			String ticket = server.getAuthTicket();
+			long expires = System.currentTimeMillis() + parseTimeout(server.getLoginStatus());
+			return new P4TicketStore.Ticket(credentials.getUserName(), ticket, expires);
+		} finally {
+			server.disconnect();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the output of <code>p4 login -s</code>
+	 *         shows a valid ticket.
+	 */
+	static boolean isLoggedIn(String loginStatus) {
+		return loginStatus != null && LOGGED_IN.matcher(loginStatus.trim()).find();
+	}
+
+	/**
+	 * @return the time left until the ticket expires, in milliseconds.
+	 */
+	static long parseTimeout(String loginStatus) {
+		Matcher matcher = EXPIRES.matcher(String.valueOf(loginStatus));
+		if (matcher.find()) {
+			return TimeUnit.HOURS.toMillis(Long.parseLong(matcher.group(1)))
+					+ TimeUnit.MINUTES.toMillis(Long.parseLong(matcher.group(2)));
+		}
+		log.debug("Unknown ticket timeout: {}", loginStatus);
+		return DEFAULT_TIMEOUT;
+	}
+
+}
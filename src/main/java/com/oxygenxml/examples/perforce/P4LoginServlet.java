@@ -9,6 +9,8 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.perforce.p4java.exception.P4JavaException;
+
 import lombok.extern.slf4j.Slf4j;
 import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
 
@@ -23,8 +25,20 @@ public class P4LoginServlet extends WebappServletPluginExtension {
 		String serverId = PerforceUrlStreamHandler.computeServerId(httpRequest.getParameter("server"));
 
 		if ("logout".equals(action)) {
+			Map<String, PasswordAuthentication> userCredentialsMap = PerforceUrlStreamHandler.credentials
+					.getIfPresent(userId);
+			if (userCredentialsMap != null && PerforceUrlStreamHandler.ticketStore != null) {
+				for (String loggedInServerId : userCredentialsMap.keySet()) {
+					PerforceUrlStreamHandler.ticketStore.remove(userId + loggedInServerId);
+				}
+			}
 			PerforceUrlStreamHandler.credentials.invalidate(userId);
+			PerforceUrlStreamHandler.draftSessions.invalidate(userId);
 		} else {
+			if (!P4Utils.isServerUrl(httpRequest.getParameter("server"))) {
+				httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			}
 			String user = httpRequest.getParameter("user");
 			String passwd = httpRequest.getParameter("passwd");
 
@@ -40,7 +54,19 @@ public class P4LoginServlet extends WebappServletPluginExtension {
 				userCredentialsMap = new HashMap<>();
 				PerforceUrlStreamHandler.credentials.put(userId, userCredentialsMap);
 			}
-			userCredentialsMap.put(serverId, new PasswordAuthentication(user, passwd.toCharArray()));
+			PasswordAuthentication userCredentials = new PasswordAuthentication(user, passwd.toCharArray());
+			userCredentialsMap.put(serverId, userCredentials);
+
+			if (PerforceUrlStreamHandler.ticketStore != null) {
+				// persist a ticket so that the session survives a restart.
+				try {
+					P4TicketStore.Ticket ticket = new P4LoginOperation(httpRequest.getParameter("server"),
+							userCredentials).login();
+					PerforceUrlStreamHandler.ticketStore.put(userId + serverId, ticket);
+				} catch (P4JavaException | IOException e) {
+					log.error("Could not store the ticket of user {}", user, e);
+				}
+			}
 		}
 	}
 
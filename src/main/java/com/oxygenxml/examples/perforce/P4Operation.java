@@ -1,9 +1,11 @@
 package com.oxygenxml.examples.perforce;
 
+import java.net.PasswordAuthentication;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Properties;
 
+import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.UsageOptions;
 import com.perforce.p4java.option.server.TrustOptions;
@@ -53,5 +55,40 @@ public class P4Operation {
 		
 		return server;
 	}
+	
+	/**
+	 * Connects and authenticates the user. Sessions restored from the
+	 * {@link P4TicketStore} use their ticket, the others log in with the
+	 * password.
+	 * 
+	 * @param server
+	 * @param credentials
+	 * @throws AccessException
+	 *             if the ticket of a restored session expired or was revoked.
+	 *             The session is dropped, the user has to log in again.
+	 * @throws P4JavaException
+	 */
+	protected void login(IOptionsServer server, PasswordAuthentication credentials) throws P4JavaException {
+		server.setUserName(credentials.getUserName());
+		// must be connected to server in order to login
+		server.connect();
+
+		P4TicketStore.Ticket ticket = PerforceUrlStreamHandler.tickets.getIfPresent(credentials);
+		if (ticket != null) {
+			server.setAuthTicket(ticket.getTicket());
+			String loginStatus;
+			try {
+				loginStatus = server.getLoginStatus();
+			} catch (AccessException e) {
+				loginStatus = e.getMessage();
+			}
+			if (!P4LoginOperation.isLoggedIn(loginStatus)) {
+				PerforceUrlStreamHandler.expireTicket(credentials);
+				throw new AccessException("The ticket of user " + credentials.getUserName() + " is no longer valid: "
+						+ loginStatus);
+			}
+		} else {
+			server.login(new String(credentials.getPassword()));
+		}
+	}
 }
-
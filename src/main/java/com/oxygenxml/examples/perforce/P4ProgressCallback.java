@@ -2,17 +2,32 @@ package com.oxygenxml.examples.perforce;
 
 import com.perforce.p4java.server.callback.IProgressCallback;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * A simple demo P4Java progress callback implementation. Real implementations
- * would probably correlate the key arguments and associated output, but this
- * version simply puts whatever it's passed onto standard output with a dash
- * prepended.
+ * A simple P4Java progress callback implementation. Besides logging whatever
+ * it's passed, it counts the ticks and remembers the last tick marker so that
+ * long running operations can report their progress. A cancelled callback
+ * asks P4Java to stop the running command.
  */
 @Slf4j
 public class P4ProgressCallback implements IProgressCallback {
 
+	/**
+	 * Number of ticks received so far.
+	 */
+	@Getter
+	private volatile int ticks;
+
+	/**
+	 * The last tick marker received, usually the file being processed.
+	 */
+	@Getter
+	private volatile String lastTickMarker;
+
+	private volatile boolean cancelled;
+
 	public void start(int key) {
 		log.debug("Starting command {}", key);
 	}
@@ -22,10 +37,28 @@ public class P4ProgressCallback implements IProgressCallback {
 	}
 
 	public boolean tick(int key, String tickMarker) {
+		ticks++;
 		if (tickMarker != null) {
+			lastTickMarker = tickMarker;
 			log.debug("{} - {}", key, tickMarker);
 		}
-		return true;
+		return !cancelled;
+	}
+
+	/**
+	 * Stops the command at the next tick.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return <code>true</code> if {@link #cancel()} was called. P4Java returns
+	 *         the partial results of a cancelled command without failing, so
+	 *         the callers must check this.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
 	}
-	
+
 }
@@ -1,18 +1,22 @@
-
+
 package com.oxygenxml.examples.perforce;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.PasswordAuthentication;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 
+import com.oxygenxml.examples.perforce.P4ContentCache.CachedFile;
+import com.perforce.p4java.core.IChangelist;
 import com.perforce.p4java.core.file.FileSpecBuilder;
 import com.perforce.p4java.core.file.FileSpecOpStatus;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.option.server.GetDepotFilesOptions;
+import com.perforce.p4java.option.server.GetFileContentsOptions;
 import com.perforce.p4java.server.IOptionsServer;
 
 import lombok.extern.slf4j.Slf4j;
@@ -21,15 +25,24 @@ import lombok.extern.slf4j.Slf4j;
 public class P4ReadOperation extends P4Operation {
 
 	private IOptionsServer server;
+	private String uriString;
 	private String depotPath;
 	
 	private PasswordAuthentication credentials;
 
+	/**
+	 * Whether the user's draft shelf takes precedence over the depot head
+	 * revision.
+	 */
+	private boolean preferDraft;
+
 	public P4ReadOperation(String uriString, PasswordAuthentication credentials) {
 		try {
+			this.uriString = uriString;
 			URI uri = new URI(uriString);
 			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
-			this.depotPath = uri.getPath();
+			// the path may carry a #rev or @change specifier
+			this.depotPath = P4Utils.getFileSpec(uri);
 			
 			this.credentials = credentials;
 
@@ -40,14 +53,26 @@ public class P4ReadOperation extends P4Operation {
 		}
 	}
 
+	public void setPreferDraft(boolean preferDraft) {
+		this.preferDraft = preferDraft;
+	}
+
 	public InputStream read() throws P4JavaException {
 		log.info("Working with server URI {}", serverUri);
 
+		if (P4Utils.isImmutableRevision(depotPath)) {
+			return readRevision();
+		}
+
 		try {
-			server.setUserName(credentials.getUserName());
-			// must be connected to server in order to login
-			server.connect();
-			server.login(new String(credentials.getPassword()));
+			login(server, credentials);
+
+			if (preferDraft && !P4Utils.hasRevisionSpecifier(depotPath)) {
+				InputStream draft = readDraft();
+				if (draft != null) {
+					return draft;
+				}
+			}
 
 			List<IFileSpec> fileList = server.getDepotFiles(FileSpecBuilder.makeFileSpecList(depotPath),
 					new GetDepotFilesOptions());
@@ -79,6 +104,61 @@ public class P4ReadOperation extends P4Operation {
 		
 	}
 
+	/**
+	 * Reads a revision addressed by number, whose content never changes, from
+	 * the {@link P4ContentCache} shared with {@link P4AssetOperation}. The
+	 * revision is printed to the cache if needed. The user's access to the
+	 * file is checked in both cases.
+	 * 
+	 * @return the content, the revision stays in the cache at least until the
+	 *         stream is closed.
+	 */
+	private InputStream readRevision() throws P4JavaException {
+		P4AssetOperation assetOp = new P4AssetOperation(uriString, credentials);
+		try {
+			assetOp.connect();
+			CachedFile cached = assetOp.getCachedFile();
+			try {
+				return cached.openStream();
+			} catch (IOException e) {
+				cached.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			log.error(e.getLocalizedMessage(), e);
+			throw new P4JavaException(e);
+		} finally {
+			assetOp.disconnect();
+		}
+	}
+
+	/**
+	 * Reads the version of the file shelved in the user's draft changelist.
+	 * 
+	 * @return the shelved content or <code>null</code> if the file is not part
+	 *         of the user's draft.
+	 */
+	private InputStream readDraft() throws P4JavaException {
+		int draftId = P4DraftOperation.findDraftChangelistId(server, credentials.getUserName());
+		if (draftId == IChangelist.UNKNOWN) {
+			return null;
+		}
+
+		List<IFileSpec> shelvedFiles = server.getShelvedFiles(draftId);
+		if (shelvedFiles != null) {
+			for (IFileSpec fileSpec : shelvedFiles) {
+				if (fileSpec != null && fileSpec.getOpStatus() == FileSpecOpStatus.VALID
+						&& depotPath.equals(fileSpec.getDepotPathString())) {
+					log.debug("Reading {} from draft changelist {}", depotPath, draftId);
+					// p4 print file@=change prints the shelved revision
+					return server.getFileContents(FileSpecBuilder.makeFileSpecList(depotPath + "@=" + draftId),
+							new GetFileContentsOptions(false, true));
+				}
+			}
+		}
+		return null;
+	}
+
 	protected static String formatFileSpec(IFileSpec fileSpec) {
 		return fileSpec.getDepotPathString();
 	}
@@ -0,0 +1,172 @@
+package com.oxygenxml.examples.perforce;
+
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingCallback;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Searches a depot folder for files whose name contains a string
+ * (<code>p4 files</code>) and for lines containing it (<code>p4 grep</code>).
+ * The results are passed on as soon as the server sends them.
+ */
+@Slf4j
+public class P4SearchOperation extends P4Operation {
+
+	/**
+	 * A file whose path matches, or a matching line of a file.
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static class SearchResult {
+		private final String depotPath;
+		/**
+		 * The line number, 0 for file name matches.
+		 */
+		private final int line;
+		private final String text;
+
+		public String toJson() {
+			return "{\"path\":" + P4Utils.toJsonString(depotPath) + ",\"line\":" + line + ",\"text\":"
+					+ P4Utils.toJsonString(text) + "}";
+		}
+	}
+
+	private IOptionsServer server;
+	private String folderPath;
+
+	private PasswordAuthentication credentials;
+
+	public P4SearchOperation(String uriString, PasswordAuthentication credentials) {
+		try {
+			URI uri = new URI(uriString);
+			this.serverUri = new URI(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort());
+			this.folderPath = P4Utils.folderSpec(uri.getPath());
+
+			this.credentials = credentials;
+
+			this.server = getOptionsServer(null, null);
+			this.server.registerProgressCallback(new P4ProgressCallback());
+		} catch (P4JavaException | URISyntaxException e) {
+			log.error("Could not create search operation", e);
+		}
+	}
+
+	public void connect() throws P4JavaException {
+		log.debug("Working server URI: {}", serverUri);
+
+		login(server, credentials);
+	}
+
+	public void disconnect() throws P4JavaException {
+		server.disconnect();
+	}
+
+	/**
+	 * @return the number of the latest change submitted in the folder, 0 if
+	 *         there is none.
+	 */
+	public int getLatestChange() throws P4JavaException {
+		return P4Utils.getLatestChange(server, folderPath);
+	}
+
+	/**
+	 * Runs the search. File name matches are reported first.
+	 *
+	 * @param query
+	 *            the string to look for, case insensitive.
+	 * @param maxResults
+	 *            the maximum number of results to report.
+	 * @param listener
+	 *            receives the results, returns <code>false</code> to stop the
+	 *            search.
+	 *
+	 * @return <code>true</code> if the search was not stopped by the listener.
+	 */
+	public boolean search(String query, int maxResults, Predicate<SearchResult> listener) throws P4JavaException {
+		SearchCallback callback = new SearchCallback(maxResults, listener);
+
+		// the p4 wildcards and revision specifiers must be escaped in the file name pattern
+		String namePattern = query.replace("%", "%25").replace("@", "%40").replace("#", "%23").replace("*", "%2A");
+		server.execStreamingMapCommand("files", new String[] { "-e", folderPath + "*" + namePattern + "*" }, null,
+				callback, 0);
+		if (!callback.stopped) {
+			server.execStreamingMapCommand("grep", new String[] { "-n", "-i", "-F", "-s", "-e", query, folderPath },
+					null, callback, 1);
+		}
+
+		log.debug("Search for '{}' in {} reported {} results", query, folderPath, callback.count);
+		return !callback.cancelled;
+	}
+
+	/**
+	 * Converts the tagged output of <code>p4 files</code> and
+	 * <code>p4 grep</code> to search results.
+	 */
+	private static class SearchCallback implements IStreamingCallback {
+		private final int maxResults;
+		private final Predicate<SearchResult> listener;
+
+		private int count;
+		/**
+		 * The maximum number of results was reached or the listener cancelled.
+		 */
+		private boolean stopped;
+		/**
+		 * The listener cancelled the search.
+		 */
+		private boolean cancelled;
+
+		SearchCallback(int maxResults, Predicate<SearchResult> listener) {
+			this.maxResults = maxResults;
+			this.listener = listener;
+		}
+
+		@Override
+		public boolean startResults(int key) {
+			return !stopped;
+		}
+
+		@Override
+		public boolean endResults(int key) {
+			return true;
+		}
+
+		@Override
+		public boolean handleResult(Map<String, Object> resultMap, int key) {
+			if (stopped) {
+				return false;
+			}
+
+			Object depotFile = resultMap.get("depotFile");
+			if (depotFile != null) {
+				SearchResult result;
+				if (resultMap.containsKey("matchedLine")) {
+					result = new SearchResult(depotFile.toString(), Integer.parseInt(resultMap.get("line").toString()),
+							resultMap.get("matchedLine").toString());
+				} else {
+					result = new SearchResult(depotFile.toString(), 0, null);
+				}
+
+				count++;
+				if (!listener.test(result)) {
+					cancelled = true;
+					stopped = true;
+				} else if (count >= maxResults) {
+					stopped = true;
+				}
+			}
+			return !stopped;
+		}
+	}
+
+}
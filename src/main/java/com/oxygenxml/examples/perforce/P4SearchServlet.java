@@ -0,0 +1,112 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.PasswordAuthentication;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.oxygenxml.examples.perforce.P4SearchOperation.SearchResult;
+import com.perforce.p4java.exception.P4JavaException;
+
+import lombok.extern.slf4j.Slf4j;
+import ro.sync.ecss.extensions.api.webapp.plugin.WebappServletPluginExtension;
+
+/**
+ * Searches a depot folder by file name and content. The results are streamed
+ * as they arrive, one JSON object per line:
+ * <code>{"path": "//depot/a.xml", "line": 12, "text": "..."}</code>.
+ * <p>
+ * GET url=folder URL, q=the searched string
+ */
+@Slf4j
+public class P4SearchServlet extends WebappServletPluginExtension {
+
+	/**
+	 * Server side cap on the number of results of one search.
+	 */
+	static final int MAX_RESULTS = 500;
+
+	/**
+	 * Results of complete searches, keyed by the latest change in the folder,
+	 * the P4 user, the folder URL and the query. The user is part of the key
+	 * since the protections may hide some files from other users. A new submit
+	 * in the folder changes the key so the entries never need invalidation.
+	 */
+	private static final Cache<String, List<SearchResult>> results = CacheBuilder.newBuilder().concurrencyLevel(10)
+			.maximumSize(200).expireAfterAccess(1, TimeUnit.HOURS).build();
+
+	@Override
+	public void doGet(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+			throws ServletException, IOException {
+		String userId = httpRequest.getSession().getId();
+		String url = httpRequest.getParameter("url");
+		String query = httpRequest.getParameter("q");
+		if (!P4Utils.isServerUrl(url) || query == null || query.trim().isEmpty()) {
+			httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+			return;
+		}
+
+		PasswordAuthentication userCredentials = PerforceUrlStreamHandler.getCredentials(userId, url);
+		if (userCredentials == null) {
+			httpResponse.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		P4SearchOperation searchOp = new P4SearchOperation(url, userCredentials);
+		try {
+			searchOp.connect();
+			String key = searchOp.getLatestChange() + "\n" + userCredentials.getUserName() + "\n" + url + "\n"
+					+ query;
+
+			httpResponse.setContentType("application/x-ndjson");
+			httpResponse.setCharacterEncoding("UTF-8");
+			PrintWriter writer = httpResponse.getWriter();
+
+			List<SearchResult> cached = results.getIfPresent(key);
+			if (cached != null) {
+				log.debug("Search results served from cache: {}", key);
+				for (SearchResult result : cached) {
+					writer.println(result.toJson());
+				}
+				return;
+			}
+
+			List<SearchResult> found = new ArrayList<>();
+			boolean complete = searchOp.search(query, MAX_RESULTS, result -> {
+				found.add(result);
+				writer.println(result.toJson());
+				// send each result as soon as it's available, stop if the client went away.
+				writer.flush();
+				return !writer.checkError();
+			});
+			if (complete) {
+				results.put(key, found);
+			}
+		} catch (P4JavaException e) {
+			log.error("Search in {} failed", url, e);
+			if (!httpResponse.isCommitted()) {
+				httpResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+			}
+		} finally {
+			try {
+				searchOp.disconnect();
+			} catch (P4JavaException e) {
+				log.debug("Could not disconnect", e);
+			}
+		}
+	}
+
+	@Override
+	public String getPath() {
+		return "p4search";
+	}
+
+}
@@ -0,0 +1,306 @@
+package com.oxygenxml.examples.perforce;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persistent store of P4 tickets, so that the sessions survive a restart of
+ * the webapp without logging in again. Passwords are never stored.
+ * <p>
+ * The tickets are kept in an append-only file, encrypted with AES-GCM using a
+ * key generated on first use and kept next to it. The session keys are only
+ * stored hashed. The file is read once and the tickets are decrypted only when
+ * a session asks for them. Superseded, removed and expired entries are dropped
+ * by a background compaction.
+ * <p>
+ * The store is enabled by pointing the
+ * <code>com.oxygenxml.examples.perforce.ticketStore</code> system property to
+ * a directory.
+ */
+@Slf4j
+public class P4TicketStore {
+
+	public static final String DIR_PROPERTY = "com.oxygenxml.examples.perforce.ticketStore";
+
+	private static final String REMOVED = "-";
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_LENGTH = 128;
+
+	/**
+	 * A stored ticket.
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static class Ticket {
+		private final String userName;
+		private final String ticket;
+		/**
+		 * Expiration time in milliseconds.
+		 */
+		private final long expires;
+	}
+
+	/**
+	 * Entry of the store file, the ticket is still encrypted.
+	 */
+	@AllArgsConstructor
+	private static class Entry {
+		final long expires;
+		final String encrypted;
+	}
+
+	private final File keyFile;
+	private final File storeFile;
+
+	private final SecureRandom random = new SecureRandom();
+	private SecretKey key;
+
+	/**
+	 * The entries of the store file by hashed session key, <code>null</code>
+	 * until first used.
+	 */
+	private volatile Map<String, Entry> entries;
+
+	/**
+	 * Number of lines of the store file that are no longer used.
+	 */
+	private int garbage;
+
+	public P4TicketStore(File dir) {
+		this.keyFile = new File(dir, "tickets.key");
+		this.storeFile = new File(dir, "tickets.log");
+	}
+
+	/**
+	 * @return the store configured through {@link #DIR_PROPERTY}, or
+	 *         <code>null</code> if the tickets are not to be persisted.
+	 */
+	static P4TicketStore fromSystemProperty() {
+		String dir = System.getProperty(DIR_PROPERTY);
+		if (dir == null || dir.trim().isEmpty()) {
+			return null;
+		}
+
+		P4TicketStore store = new P4TicketStore(new File(dir));
+		ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("p4-ticket-store").setDaemon(true).build());
+		compactor.scheduleWithFixedDelay(store::compact, 1, 1, TimeUnit.HOURS);
+		log.info("P4 tickets are persisted in {}", dir);
+		return store;
+	}
+
+	/**
+	 * Stores the ticket of a session, replacing the previous one.
+	 *
+	 * @param sessionKey
+	 *            identifies the user session and the server.
+	 */
+	public synchronized void put(String sessionKey, Ticket ticket) throws IOException {
+		load();
+		String hash = hash(sessionKey);
+		String plain = ticket.getUserName() + "\n" + ticket.getTicket();
+		Entry entry = new Entry(ticket.getExpires(), encrypt(hash, plain));
+		append(hash, entry);
+		if (entries.put(hash, entry) != null) {
+			garbage++;
+		}
+	}
+
+	/**
+	 * @return the ticket of the session or <code>null</code> if there is no
+	 *         valid ticket stored.
+	 */
+	public Ticket get(String sessionKey) {
+		try {
+			load();
+			String hash = hash(sessionKey);
+			Entry entry = entries.get(hash);
+			if (entry == null || entry.expires < System.currentTimeMillis()) {
+				return null;
+			}
+
+			String plain = decrypt(hash, entry.encrypted);
+			int separator = plain.indexOf('\n');
+			return new Ticket(plain.substring(0, separator), plain.substring(separator + 1), entry.expires);
+		} catch (IOException e) {
+			log.error("Could not read ticket", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Forgets the ticket of a session.
+	 */
+	public synchronized void remove(String sessionKey) throws IOException {
+		load();
+		String hash = hash(sessionKey);
+		if (entries.remove(hash) != null) {
+			append(hash, new Entry(0, REMOVED));
+			garbage += 2;
+		}
+	}
+
+	/**
+	 * Rewrites the store file without the superseded, removed and expired
+	 * entries.
+	 */
+	public synchronized void compact() {
+		try {
+			load();
+			long now = System.currentTimeMillis();
+			entries.values().removeIf(entry -> entry.expires < now);
+
+			File tmpFile = new File(storeFile.getPath() + ".tmp");
+			try (Writer writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+					writeEntry(writer, entry.getKey(), entry.getValue());
+				}
+			}
+			Files.move(tmpFile.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			log.debug("Compacted ticket store, {} entries, {} dropped", entries.size(), garbage);
+			garbage = 0;
+		} catch (IOException e) {
+			log.error("Could not compact ticket store", e);
+		}
+	}
+
+	private void load() throws IOException {
+		if (entries != null) {
+			return;
+		}
+		synchronized (this) {
+			if (entries != null) {
+				return;
+			}
+
+			key = loadKey();
+			Map<String, Entry> loaded = new ConcurrentHashMap<>();
+			if (storeFile.exists()) {
+				List<String> lines = Files.readAllLines(storeFile.toPath(), StandardCharsets.UTF_8);
+				for (String line : lines) {
+					String[] fields = line.split(" ");
+					if (fields.length != 3) {
+						// partially written line
+						continue;
+					}
+					if (REMOVED.equals(fields[2])) {
+						loaded.remove(fields[0]);
+					} else {
+						loaded.put(fields[0], new Entry(Long.parseLong(fields[1]), fields[2]));
+					}
+				}
+				garbage = lines.size() - loaded.size();
+			}
+			entries = loaded;
+		}
+	}
+
+	private SecretKey loadKey() throws IOException {
+		if (keyFile.exists()) {
+			return new SecretKeySpec(Files.readAllBytes(keyFile.toPath()), "AES");
+		}
+
+		try {
+			KeyGenerator generator = KeyGenerator.getInstance("AES");
+			generator.init(128, random);
+			SecretKey newKey = generator.generateKey();
+
+			Files.createDirectories(keyFile.getParentFile().toPath());
+			// created readable by the owner only, before the key is written to it.
+			try {
+				Files.createFile(keyFile.toPath(),
+						PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			} catch (UnsupportedOperationException e) {
+				log.warn("Could not restrict the permissions of {}", keyFile);
+				Files.createFile(keyFile.toPath());
+			}
+			Files.write(keyFile.toPath(), newKey.getEncoded(), StandardOpenOption.TRUNCATE_EXISTING);
+			return newKey;
+		} catch (GeneralSecurityException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private void append(String hash, Entry entry) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(storeFile.toPath(), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			writeEntry(writer, hash, entry);
+		}
+	}
+
+	private static void writeEntry(Writer writer, String hash, Entry entry) throws IOException {
+		writer.write(hash + " " + entry.expires + " " + entry.encrypted + "\n");
+	}
+
+	/**
+	 * Encrypts the text, the session hash is authenticated with it so that an
+	 * entry can't be moved to another session.
+	 */
+	private String encrypt(String hash, String plain) throws IOException {
+		try {
+			byte[] iv = new byte[IV_LENGTH];
+			random.nextBytes(iv);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+			cipher.updateAAD(hash.getBytes(StandardCharsets.UTF_8));
+			byte[] encrypted = cipher.doFinal(plain.getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder()
+					.encodeToString(ByteBuffer.allocate(iv.length + encrypted.length).put(iv).put(encrypted).array());
+		} catch (GeneralSecurityException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private String decrypt(String hash, String encoded) throws IOException {
+		try {
+			byte[] data = Base64.getDecoder().decode(encoded);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+			cipher.updateAAD(hash.getBytes(StandardCharsets.UTF_8));
+			return new String(cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH), StandardCharsets.UTF_8);
+		} catch (GeneralSecurityException | IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static String hash(String sessionKey) throws IOException {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(sessionKey.getBytes(StandardCharsets.UTF_8));
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+		} catch (GeneralSecurityException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
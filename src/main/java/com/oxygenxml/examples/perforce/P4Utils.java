@@ -1,16 +1,22 @@
 package com.oxygenxml.examples.perforce;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import com.perforce.p4java.client.IClient;
 import com.perforce.p4java.core.ChangelistStatus;
+import com.perforce.p4java.core.IChangelist;
 import com.perforce.p4java.core.IChangelistSummary;
 import com.perforce.p4java.core.file.FileAction;
 import com.perforce.p4java.core.file.FileSpecBuilder;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
+import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
+import com.perforce.p4java.option.server.GetChangelistsOptions;
 import com.perforce.p4java.server.IOptionsServer;
 
 import lombok.extern.slf4j.Slf4j;
@@ -18,6 +24,8 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class P4Utils {
 
+	private static final Pattern IMMUTABLE_REVISION = Pattern.compile("[^#@]+#[0-9]+");
+
 	/**
 	 * Check whether a file exists in perforce and is NOT deleted in the
 	 * head-revision (requires an initialized server)
@@ -105,4 +113,193 @@ public class P4Utils {
 			log.error("Error deleting client {}", client.getName(), e);
 		}
 	}
+
+	/**
+	 * Finds the latest change submitted under a path (requires an initialized
+	 * server). It identifies the state of the path, any submit changes it.
+	 * 
+	 * @param path
+	 *            the depot path, usually with wildcards.
+	 * @return the change number, 0 if nothing was submitted yet.
+	 */
+	public static int getLatestChange(IOptionsServer server, String path) throws P4JavaException {
+		List<IChangelistSummary> changes = server.getChangelists(FileSpecBuilder.makeFileSpecList(path),
+				new GetChangelistsOptions().setType(IChangelist.Type.SUBMITTED).setMaxMostRecent(1));
+		return changes != null && !changes.isEmpty() && changes.get(0) != null ? changes.get(0).getId() : 0;
+	}
+
+	/**
+	 * Checks that a URL addresses a Perforce server:
+	 * <code>p4java*://server:port//depot/...</code>. The operations can't
+	 * connect to any other URL, e.g. one with the prefix added by the file
+	 * browser.
+	 * 
+	 * @param url
+	 *            the URL string, may be <code>null</code>.
+	 * @return <code>true</code> if the URL has a p4java scheme, a host and a
+	 *         port.
+	 */
+	public static boolean isServerUrl(String url) {
+		if (url == null) {
+			return false;
+		}
+		try {
+			URI uri = new URI(url);
+			return uri.getScheme() != null && uri.getScheme().startsWith("p4java") && uri.getHost() != null
+					&& uri.getPort() != -1;
+		} catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the file specification addressed by a p4 URL. A revision can be
+	 * given either as URL fragment or encoded in the path:
+	 * <code>p4java://server:1666//depot/a.xml#3</code>,
+	 * <code>p4java://server:1666//depot/a.xml%233</code> or
+	 * <code>p4java://server:1666//depot/a.xml@1234</code>.
+	 * 
+	 * @param uri
+	 *            the URL.
+	 * @return the depot path, with the revision specifier if any.
+	 */
+	public static String getFileSpec(URI uri) {
+		String fragment = uri.getFragment();
+		return fragment != null ? uri.getPath() + "#" + fragment : uri.getPath();
+	}
+
+	/**
+	 * @return <code>true</code> if the file specification has a #rev or
+	 *         @change specifier.
+	 */
+	public static boolean hasRevisionSpecifier(String fileSpec) {
+		return fileSpec.indexOf('#') != -1 || fileSpec.indexOf('@') != -1;
+	}
+
+	/**
+	 * @return <code>true</code> if the file specification addresses a
+	 *         revision by number, whose content can never change.
+	 */
+	public static boolean isImmutableRevision(String fileSpec) {
+		return IMMUTABLE_REVISION.matcher(fileSpec).matches();
+	}
+
+	/**
+	 * Removes the #rev or @change specifier of a file specification.
+	 * 
+	 * @param fileSpec
+	 *            the file specification.
+	 * @return the depot path of the file.
+	 */
+	public static String stripRevisionSpecifier(String fileSpec) {
+		int end = fileSpec.length();
+		int hash = fileSpec.indexOf('#');
+		int at = fileSpec.indexOf('@');
+		if (hash != -1) {
+			end = hash;
+		}
+		if (at != -1 && at < end) {
+			end = at;
+		}
+		return fileSpec.substring(0, end);
+	}
+
+	/**
+	 * Appends the "/..." wildcard to a depot folder path.
+	 * 
+	 * @param depotPath
+	 *            the folder path, with or without a trailing slash.
+	 * @return the path matching all the files in the folder and its
+	 *         sub-folders.
+	 */
+	public static String folderSpec(String depotPath) {
+		String folder = depotPath.endsWith("/") ? depotPath.substring(0, depotPath.length() - 1) : depotPath;
+		return folder.endsWith("/...") ? folder : folder + "/...";
+	}
+
+	/**
+	 * Parses a single byte range of an HTTP Range header:
+	 * <code>bytes=first-last</code>, <code>bytes=first-</code> or
+	 * <code>bytes=-suffixLength</code>.
+	 *
+	 * @param header
+	 *            the Range header value.
+	 * @param size
+	 *            the size of the file.
+	 * @return the first and the last byte of the range, or <code>null</code>
+	 *         if the range is malformed, not satisfiable or has several parts.
+	 */
+	public static long[] parseRange(String header, long size) {
+		if (header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+		String range = header.substring("bytes=".length()).trim();
+		int dash = range.indexOf('-');
+		if (dash == -1 || range.indexOf(',') != -1) {
+			return null;
+		}
+
+		try {
+			String first = range.substring(0, dash).trim();
+			String last = range.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.isEmpty()) {
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength <= 0) {
+					return null;
+				}
+				start = Math.max(0, size - suffixLength);
+				end = size - 1;
+			} else {
+				start = Long.parseLong(first);
+				end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+			}
+			return start >= 0 && start <= end ? new long[] { start, end } : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Quotes and escapes a string so that it can be used as a JSON value.
+	 * 
+	 * @param value
+	 *            the string, may be <code>null</code>.
+	 * @return the JSON string literal, or the JSON <code>null</code> literal.
+	 */
+	public static String toJsonString(String value) {
+		if (value == null) {
+			return "null";
+		}
+
+		StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"').toString();
+	}
 }
@@ -82,10 +82,7 @@ public class P4WriteOperation extends P4Operation {
 		log.debug("Working server URI: {}", serverUri);
 
 		try {
-			server.setUserName(credentials.getUserName());
-			// must be connected to server in order to login
-			server.connect();
-			server.login(new String(credentials.getPassword()));
+			login(server, credentials);
 
 			submit(file, depotPath, true);
 		} catch (Exception e) {
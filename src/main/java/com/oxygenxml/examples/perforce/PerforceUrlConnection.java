@@ -1,12 +1,17 @@
 package com.oxygenxml.examples.perforce;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.PasswordAuthentication;
 import java.net.URLConnection;
 
+import org.apache.commons.io.input.BoundedInputStream;
+
+import com.perforce.p4java.exception.AccessException;
+
 import lombok.extern.slf4j.Slf4j;
 import ro.sync.ecss.extensions.api.webapp.plugin.FilterURLConnection;
 
@@ -15,9 +20,20 @@ public class PerforceUrlConnection extends FilterURLConnection {
 
 	private PasswordAuthentication credentials;
 
+	/**
+	 * Whether saves go to the user's draft shelf instead of being submitted.
+	 */
+	private boolean draftMode;
+
 	public PerforceUrlConnection(URLConnection delegateConnection, PasswordAuthentication credentials) {
+		this(delegateConnection, credentials, false);
+	}
+
+	public PerforceUrlConnection(URLConnection delegateConnection, PasswordAuthentication credentials,
+			boolean draftMode) {
 		super(delegateConnection);
 		this.credentials = credentials;
+		this.draftMode = draftMode;
 	}
 
 	@Override
@@ -28,25 +44,90 @@ public class PerforceUrlConnection extends FilterURLConnection {
 		try {
 			log.debug("Reading url: {} user: {} - pass: {}", url, credentials.getUserName(), credentials.getPassword());
 
+			String rangeHeader = getRequestProperty("Range");
+			if (rangeHeader != null) {
+				return readRange(rangeHeader);
+			}
+
 			P4ReadOperation readOp = new P4ReadOperation(url.toString(), credentials);
+			readOp.setPreferDraft(draftMode);
 			is = readOp.read();
 			return is;
+		} catch (AccessException e) {
+			if (PerforceUrlStreamHandler.tickets.getIfPresent(credentials) != null) {
+				// the ticket of a restored session is no longer valid.
+				throw PerforceUrlStreamHandler.authenticationRequired(url.toExternalForm());
+			}
+			log.error("Exception reading file: ", e);
 		} catch (Exception e) {
 			log.error("Exception reading file: ", e);
 		}
 		return is;
 	}
 
+	/**
+	 * Reads a byte range of the file from the local content cache, so that
+	 * large assets are not transferred again for every range.
+	 */
+	private InputStream readRange(String rangeHeader) throws Exception {
+		P4AssetOperation assetOp = new P4AssetOperation(url.toString(), credentials);
+		assetOp.connect();
+		P4ContentCache.CachedFile cached = null;
+		try {
+			cached = assetOp.getCachedFile();
+			long[] range = P4Utils.parseRange(rangeHeader, cached.getLength());
+			if (range == null) {
+				throw new IOException("Range not satisfiable: " + rangeHeader);
+			}
+
+			FileInputStream in = new FileInputStream(cached.getFile());
+			try {
+				in.getChannel().position(range[0]);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+			// the cached file is kept until the stream is closed.
+			P4ContentCache.CachedFile reading = cached;
+			cached = null;
+			return new BoundedInputStream(in, range[1] - range[0] + 1) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						reading.close();
+					}
+				}
+			};
+		} finally {
+			if (cached != null) {
+				cached.close();
+			}
+			assetOp.disconnect();
+		}
+	}
+
 	@Override
 	public OutputStream getOutputStream() throws IOException {
 		log.debug("output stream from {}", url);
 
+		if (url.getRef() != null || url.getPath().indexOf('@') != -1 || url.getPath().indexOf("%23") != -1) {
+			// old revisions are read-only
+			throw new IOException("Cannot save a specific revision: " + url);
+		}
+
 		return new ByteArrayOutputStream() {
 			@Override
 			public void close() throws IOException {
 				byte[] fileContents = toByteArray();
-				P4WriteOperation writeOp = new P4WriteOperation(url.toString(), credentials);
-				writeOp.write(fileContents);
+				if (draftMode) {
+					P4DraftOperation draftOp = new P4DraftOperation(url.toString(), credentials);
+					draftOp.shelve(fileContents);
+				} else {
+					P4WriteOperation writeOp = new P4WriteOperation(url.toString(), credentials);
+					writeOp.write(fileContents);
+				}
 			}
 		};
 	}
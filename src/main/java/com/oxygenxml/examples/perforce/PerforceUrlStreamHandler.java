@@ -6,6 +6,7 @@ import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.HashMap;
 import java.util.Map;
 
 import com.google.common.cache.Cache;
@@ -25,6 +26,24 @@ public class PerforceUrlStreamHandler extends URLStreamHandlerWithContext {
 	public static final Cache<String, Map<String, PasswordAuthentication>> credentials = CacheBuilder.newBuilder()
 			.concurrencyLevel(10).maximumSize(10000).build();
 
+	/**
+	 * Tickets of the credentials restored from the {@link #ticketStore}, which
+	 * carry no password.
+	 */
+	public static final Cache<PasswordAuthentication, P4TicketStore.Ticket> tickets = CacheBuilder.newBuilder()
+			.weakKeys().build();
+
+	/**
+	 * Persistent ticket store, <code>null</code> if not configured.
+	 */
+	public static final P4TicketStore ticketStore = P4TicketStore.fromSystemProperty();
+
+	/**
+	 * Sessions that save to their draft shelf instead of submitting.
+	 */
+	public static final Cache<String, Boolean> draftSessions = CacheBuilder.newBuilder()
+			.concurrencyLevel(10).maximumSize(10000).build();
+
 	/**
 	 * Computes a server identifier out of the requested URL.
 	 * 
@@ -47,26 +66,87 @@ public class PerforceUrlStreamHandler extends URLStreamHandlerWithContext {
 		return serverId;
 	}
 
+	/**
+	 * Looks up the credentials a user stored for the server of the given URL.
+	 * 
+	 * @param contextId
+	 *            the session id of the user.
+	 * @param serverUrl
+	 *            the URL string.
+	 * 
+	 * @return the credentials or <code>null</code> if the user did not log in
+	 *         to that server or if the ticket of the restored session expired.
+	 */
+	public static PasswordAuthentication getCredentials(String contextId, String serverUrl) {
+		String serverId = computeServerId(serverUrl);
+		Map<String, PasswordAuthentication> credentialsMap = credentials.getIfPresent(contextId);
+		PasswordAuthentication userCredentials = credentialsMap != null ? credentialsMap.get(serverId) : null;
+
+		if (userCredentials != null) {
+			P4TicketStore.Ticket ticket = tickets.getIfPresent(userCredentials);
+			if (ticket != null && ticket.getExpires() < System.currentTimeMillis()) {
+				// forget the session so that the user is asked to log in again.
+				log.debug("The ticket of session {} expired", contextId);
+				credentialsMap.remove(serverId);
+				tickets.invalidate(userCredentials);
+				if (ticketStore != null) {
+					try {
+						ticketStore.remove(contextId + serverId);
+					} catch (IOException e) {
+						log.error("Could not remove the ticket of session {}", contextId, e);
+					}
+				}
+				return null;
+			}
+		}
+
+		if (userCredentials == null && ticketStore != null) {
+			// the session may have been started before a restart.
+			P4TicketStore.Ticket ticket = ticketStore.get(contextId + serverId);
+			if (ticket != null) {
+				log.debug("Restored session {} of user {}", contextId, ticket.getUserName());
+				userCredentials = new PasswordAuthentication(ticket.getUserName(), new char[0]);
+				tickets.put(userCredentials, ticket);
+				credentials.asMap().computeIfAbsent(contextId, key -> new HashMap<>()).put(serverId, userCredentials);
+			}
+		}
+		return userCredentials;
+	}
+
+	/**
+	 * Marks the ticket of restored credentials as expired, e.g. when the
+	 * server no longer accepts it, so that {@link #getCredentials(String, String)}
+	 * drops the session.
+	 */
+	static void expireTicket(PasswordAuthentication userCredentials) {
+		P4TicketStore.Ticket ticket = tickets.getIfPresent(userCredentials);
+		if (ticket != null) {
+			tickets.put(userCredentials, new P4TicketStore.Ticket(ticket.getUserName(), ticket.getTicket(), 0));
+		}
+	}
+
+	/**
+	 * @return the exception that makes the editor ask the user to log in to
+	 *         the server of the URL.
+	 */
+	static UserActionRequiredException authenticationRequired(String url) {
+		return new UserActionRequiredException(
+				new WebappMessage(WebappMessage.MESSAGE_TYPE_CUSTOM, "Authentication required",
+						// send back the URL for which to authenticate.
+						url, true));
+	}
+
 	@Override
 	protected URLConnection openConnectionInContext(String contextId, URL url, Proxy proxy) throws IOException {
 		log.debug("creating connection");
 
-		PasswordAuthentication userCredentials = null;
-
 		// Obtain the credentials for the current user.
-		Map<String, PasswordAuthentication> credentialsMap = credentials.getIfPresent(contextId);
-		if (credentialsMap != null) {
-			log.debug("externalform :{} - {}", url.toExternalForm(), url.toString());
-			userCredentials = credentialsMap.get(computeServerId(url.toExternalForm()));
-			credentialsMap.keySet().forEach(key -> log.debug("Key in map:" + key));
-		}
+		log.debug("externalform :{} - {}", url.toExternalForm(), url.toString());
+		PasswordAuthentication userCredentials = getCredentials(contextId, url.toExternalForm());
 		
 		
 		if (userCredentials == null) {		
-			throw new UserActionRequiredException(
-					new WebappMessage(WebappMessage.MESSAGE_TYPE_CUSTOM, "Authentication required",
-							// send back the URL for which to authenticate.
-							url.toExternalForm(), true));
+			throw authenticationRequired(url.toExternalForm());
 		} else {
 			log.debug("userCredentials: {} ", userCredentials.getUserName());
 		}
@@ -79,7 +159,8 @@ public class PerforceUrlStreamHandler extends URLStreamHandlerWithContext {
 		};
 		
 
-		return new PerforceUrlConnection(p4connection, userCredentials);
+		boolean draftMode = Boolean.TRUE.equals(draftSessions.getIfPresent(contextId));
+		return new PerforceUrlConnection(p4connection, userCredentials, draftMode);
 	}
 
 }
@@ -0,0 +1,83 @@
+package com.oxygenxml.examples.perforce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class P4AssetOperationTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testFollowPrintAndCache() throws Exception {
+		P4ContentCache cache = new P4ContentCache(folder.newFolder(), 1000);
+		File printDir = cache.newDownloadDirectory();
+		Files.createDirectories(printDir.toPath());
+		byte[] content = new byte[300];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// writes the content in chunks, like P4Java printing to its temporary file
+			Future<InputStream> printing = executor.submit(() -> {
+				File printed = new File(printDir, "p4j1234.tmp");
+				try (OutputStream out = new FileOutputStream(printed)) {
+					for (int i = 0; i < content.length; i += 100) {
+						Thread.sleep(50);
+						out.write(content, i, 100);
+						out.flush();
+					}
+				}
+				return new FileInputStream(printed);
+			});
+
+			ByteArrayOutputStream followed = new ByteArrayOutputStream();
+			P4AssetOperation.follow(printDir, printing, followed);
+			assertArrayEquals(content, followed.toByteArray());
+			printing.get().close();
+
+			File printed = P4AssetOperation.findPrintedFile(printDir);
+			try (P4ContentCache.CachedFile cached = cache.put("//depot/image.png#1", printed)) {
+				assertArrayEquals(content, Files.readAllBytes(cached.getFile().toPath()));
+			}
+			// moved, not copied
+			assertNull(P4AssetOperation.findPrintedFile(printDir));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFollowFailedPrint() throws Exception {
+		File printDir = folder.newFolder();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<InputStream> printing = executor.submit(() -> {
+				throw new IllegalStateException("no such file");
+			});
+
+			ByteArrayOutputStream followed = new ByteArrayOutputStream();
+			P4AssetOperation.follow(printDir, printing, followed);
+			assertArrayEquals(new byte[0], followed.toByteArray());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.oxygenxml.examples.perforce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class P4ContentCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File download(P4ContentCache cache, int length) throws IOException {
+		File dir = cache.newDownloadDirectory();
+		Files.createDirectories(dir.toPath());
+		File file = new File(dir, "p4j.tmp");
+		Files.write(file.toPath(), new byte[length]);
+		return file;
+	}
+
+	@Test
+	public void testLargeFileIsCached() throws IOException {
+		P4ContentCache cache = new P4ContentCache(folder.newFolder(), 1000);
+
+		// larger than the maximum size divided by the default number of segments
+		cache.put("big", download(cache, 600)).close();
+
+		P4ContentCache.CachedFile cached = cache.get("big");
+		assertNotNull(cached);
+		assertEquals(600, cached.getLength());
+		assertTrue(cached.getFile().exists());
+		cached.close();
+	}
+
+	@Test
+	public void testEvictedFileKeptWhileRead() throws IOException {
+		P4ContentCache cache = new P4ContentCache(folder.newFolder(), 1000);
+		cache.put("first", download(cache, 600)).close();
+
+		P4ContentCache.CachedFile reading = cache.get("first");
+		cache.put("second", download(cache, 600)).close();
+		assertNull(cache.get("first"));
+		assertTrue(reading.getFile().exists());
+
+		reading.close();
+		assertFalse(reading.getFile().exists());
+	}
+
+	@Test
+	public void testStreamKeepsEvictedFile() throws IOException {
+		P4ContentCache cache = new P4ContentCache(folder.newFolder(), 1000);
+		P4ContentCache.CachedFile cached = cache.put("first", download(cache, 600));
+		File file = cached.getFile();
+		InputStream in = cached.openStream();
+		cache.put("second", download(cache, 600)).close();
+		assertTrue(file.exists());
+
+		assertEquals(600, IOUtils.toByteArray(in).length);
+		in.close();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testReplacedFileKeptWhileRead() throws IOException {
+		P4ContentCache cache = new P4ContentCache(folder.newFolder(), 1000);
+		P4ContentCache.CachedFile first = cache.put("key", download(cache, 100));
+		cache.put("key", download(cache, 100)).close();
+		assertTrue(first.getFile().exists());
+
+		first.close();
+		assertFalse(first.getFile().exists());
+	}
+
+	@Test
+	public void testMissingFileIsNotReturned() throws IOException {
+		P4ContentCache cache = new P4ContentCache(folder.newFolder(), 1000);
+		P4ContentCache.CachedFile cached = cache.put("key", download(cache, 100));
+		cached.close();
+		assertTrue(cached.getFile().delete());
+
+		assertNull(cache.get("key"));
+	}
+
+}
@@ -0,0 +1,27 @@
+package com.oxygenxml.examples.perforce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class P4LoginOperationTest {
+
+	@Test
+	public void testParseTimeout() {
+		assertEquals((11 * 60 + 59) * 60000L,
+				P4LoginOperation.parseTimeout("User user001 ticket expires in 11 hours 59 minutes."));
+		assertEquals(60000L, P4LoginOperation.parseTimeout("User user001 ticket expires in 0 hours 1 minute."));
+	}
+
+	@Test
+	public void testIsLoggedIn() {
+		assertTrue(P4LoginOperation.isLoggedIn("User user001 ticket expires in 11 hours 59 minutes."));
+		assertTrue(P4LoginOperation.isLoggedIn("User user001 ticket does not expire.\n"));
+		assertFalse(P4LoginOperation.isLoggedIn("Perforce password (P4PASSWD) invalid or unset."));
+		assertFalse(P4LoginOperation.isLoggedIn("Your session has expired, please login again."));
+		assertFalse(P4LoginOperation.isLoggedIn(""));
+		assertFalse(P4LoginOperation.isLoggedIn(null));
+	}
+}
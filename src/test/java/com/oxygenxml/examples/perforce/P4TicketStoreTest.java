@@ -0,0 +1,76 @@
+package com.oxygenxml.examples.perforce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class P4TicketStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	long expires = System.currentTimeMillis() + 60000;
+
+	@Test
+	public void testTicketSurvivesRestart() throws IOException {
+		File dir = folder.newFolder();
+		new P4TicketStore(dir).put("session1server", new P4TicketStore.Ticket("user001", "ABCDEF", expires));
+
+		P4TicketStore.Ticket ticket = new P4TicketStore(dir).get("session1server");
+		assertEquals("user001", ticket.getUserName());
+		assertEquals("ABCDEF", ticket.getTicket());
+		assertNull(new P4TicketStore(dir).get("session2server"));
+	}
+
+	@Test
+	public void testTicketEncrypted() throws IOException {
+		File dir = folder.newFolder();
+		new P4TicketStore(dir).put("session1server", new P4TicketStore.Ticket("user001", "ABCDEF", expires));
+
+		String stored = new String(Files.readAllBytes(new File(dir, "tickets.log").toPath()), StandardCharsets.UTF_8);
+		assertFalse(stored.contains("ABCDEF"));
+		assertFalse(stored.contains("user001"));
+		assertFalse(stored.contains("session1"));
+	}
+
+	@Test
+	public void testCompact() throws IOException {
+		File dir = folder.newFolder();
+		P4TicketStore store = new P4TicketStore(dir);
+		store.put("session1server", new P4TicketStore.Ticket("user001", "T1", expires));
+		store.put("session1server", new P4TicketStore.Ticket("user001", "T2", expires));
+		store.put("session2server", new P4TicketStore.Ticket("user002", "T3", expires));
+		store.remove("session2server");
+		store.put("session3server", new P4TicketStore.Ticket("user003", "T4", System.currentTimeMillis() - 1));
+		store.compact();
+
+		assertEquals(1, Files.readAllLines(new File(dir, "tickets.log").toPath()).size());
+		P4TicketStore reloaded = new P4TicketStore(dir);
+		assertEquals("T2", reloaded.get("session1server").getTicket());
+		assertNull(reloaded.get("session2server"));
+		assertNull(reloaded.get("session3server"));
+	}
+
+	@Test
+	public void testKeyReadableByOwnerOnly() throws IOException {
+		File dir = folder.newFolder();
+		Assume.assumeTrue(Files.getFileStore(dir.toPath()).supportsFileAttributeView(PosixFileAttributeView.class));
+		new P4TicketStore(dir).put("session1server", new P4TicketStore.Ticket("user001", "ABCDEF", expires));
+
+		File[] keys = dir.listFiles((parent, name) -> !name.equals("tickets.log"));
+		assertEquals(1, keys.length);
+		assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(keys[0].toPath()));
+	}
+}
@@ -0,0 +1,75 @@
+package com.oxygenxml.examples.perforce;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+public class P4UtilsTest {
+
+	@Test
+	public void testGetFileSpec() throws Exception {
+		assertEquals("//depot/a.xml", P4Utils.getFileSpec(new URI("p4java://localhost:1666//depot/a.xml")));
+		assertEquals("//depot/a.xml#3", P4Utils.getFileSpec(new URI("p4java://localhost:1666//depot/a.xml#3")));
+		assertEquals("//depot/a.xml#3", P4Utils.getFileSpec(new URI("p4java://localhost:1666//depot/a.xml%233")));
+		assertEquals("//depot/a.xml@1234", P4Utils.getFileSpec(new URI("p4java://localhost:1666//depot/a.xml@1234")));
+	}
+
+	@Test
+	public void testIsServerUrl() {
+		assertTrue(P4Utils.isServerUrl("p4java://localhost:1666//depot/a.xml"));
+		assertTrue(P4Utils.isServerUrl("p4javassl://localhost:1666//depot/dir/"));
+		assertFalse(P4Utils.isServerUrl("webdav-p4java://localhost:1666//depot/a.xml"));
+		assertFalse(P4Utils.isServerUrl("p4java://localhost//depot/a.xml"));
+		assertFalse(P4Utils.isServerUrl("//depot/a.xml"));
+		assertFalse(P4Utils.isServerUrl(null));
+	}
+
+	@Test
+	public void testRevisionSpecifiers() {
+		assertTrue(P4Utils.isImmutableRevision("//depot/a.xml#3"));
+		assertFalse(P4Utils.isImmutableRevision("//depot/a.xml#head"));
+		assertFalse(P4Utils.isImmutableRevision("//depot/a.xml@1234"));
+		assertFalse(P4Utils.isImmutableRevision("//depot/a.xml"));
+
+		assertTrue(P4Utils.hasRevisionSpecifier("//depot/a.xml@1234"));
+		assertFalse(P4Utils.hasRevisionSpecifier("//depot/a.xml"));
+
+		assertEquals("//depot/a.xml", P4Utils.stripRevisionSpecifier("//depot/a.xml#3"));
+		assertEquals("//depot/a.xml", P4Utils.stripRevisionSpecifier("//depot/a.xml@1234"));
+		assertEquals("//depot/a.xml", P4Utils.stripRevisionSpecifier("//depot/a.xml"));
+	}
+
+	@Test
+	public void testFolderSpec() {
+		assertEquals("//depot/dir/...", P4Utils.folderSpec("//depot/dir"));
+		assertEquals("//depot/dir/...", P4Utils.folderSpec("//depot/dir/"));
+		assertEquals("//depot/dir/...", P4Utils.folderSpec("//depot/dir/..."));
+	}
+
+	@Test
+	public void testToJsonString() {
+		assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", P4Utils.toJsonString("a\"b\\c\nd\u0001"));
+		assertEquals("null", P4Utils.toJsonString(null));
+	}
+
+	@Test
+	public void testParseRange() {
+		assertArrayEquals(new long[] {0, 99}, P4Utils.parseRange("bytes=0-99", 1000));
+		assertArrayEquals(new long[] {500, 999}, P4Utils.parseRange("bytes=500-", 1000));
+		assertArrayEquals(new long[] {900, 999}, P4Utils.parseRange("bytes=-100", 1000));
+		assertArrayEquals(new long[] {0, 999}, P4Utils.parseRange("bytes=-2000", 1000));
+		assertArrayEquals(new long[] {990, 999}, P4Utils.parseRange("bytes=990-2000", 1000));
+
+		assertNull(P4Utils.parseRange("bytes=1000-", 1000));
+		assertNull(P4Utils.parseRange("bytes=5-2", 1000));
+		assertNull(P4Utils.parseRange("bytes=0-1,5-6", 1000));
+		assertNull(P4Utils.parseRange("bytes=a-b", 1000));
+		assertNull(P4Utils.parseRange("items=0-1", 1000));
+	}
+}
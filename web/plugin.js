@@ -99,12 +99,145 @@
       "fr_FR":"Créer un nouveau document sur un serveur WebDAV",
       "ja_JP":"WebDAVサーバー上で新しいドキュメントを作成する",
       "nl_NL":"Een nieuw document op een WebDAV-server maken"
+    },
+    "DRAFT_MODE_": {
+      "en_US":"Draft mode",
+      "de_DE":"Entwurfsmodus",
+      "fr_FR":"Mode brouillon",
+      "ja_JP":"下書きモード",
+      "nl_NL":"Conceptmodus"
+    },
+    "SUBMIT_DRAFT_": {
+      "en_US":"Submit draft",
+      "de_DE":"Entwurf übermitteln",
+      "fr_FR":"Soumettre le brouillon",
+      "ja_JP":"下書きをサブミット",
+      "nl_NL":"Concept indienen"
+    },
+    "CANNOT_SUBMIT_DRAFT_": {
+      "en_US":"Cannot submit the draft",
+      "de_DE":"Der Entwurf konnte nicht übermittelt werden",
+      "fr_FR":"Impossible de soumettre le brouillon",
+      "ja_JP":"下書きをサブミットできません",
+      "nl_NL":"Kan het concept niet indienen"
+    },
+    "BULK_OPERATION_FAILED_": {
+      "en_US":"The operation failed",
+      "de_DE":"Der Vorgang ist fehlgeschlagen",
+      "fr_FR":"L'opération a échoué",
+      "ja_JP":"操作に失敗しました",
+      "nl_NL":"De bewerking is mislukt"
+    },
+    "SEARCH_": {
+      "en_US":"Search",
+      "de_DE":"Suchen",
+      "fr_FR":"Rechercher",
+      "ja_JP":"検索",
+      "nl_NL":"Zoeken"
+    },
+    "NO_RESULTS_": {
+      "en_US":"No results",
+      "de_DE":"Keine Ergebnisse",
+      "fr_FR":"Aucun résultat",
+      "ja_JP":"結果がありません",
+      "nl_NL":"Geen resultaten"
+    },
+    "HISTORY_": {
+      "en_US":"History",
+      "de_DE":"Verlauf",
+      "fr_FR":"Historique",
+      "ja_JP":"履歴",
+      "nl_NL":"Geschiedenis"
+    },
+    "LOAD_MORE_": {
+      "en_US":"Load more",
+      "de_DE":"Mehr laden",
+      "fr_FR":"Charger plus",
+      "ja_JP":"さらに読み込む",
+      "nl_NL":"Meer laden"
+    },
+    "FOLDER_ACTIONS_": {
+      "en_US":"Copy, move or delete the folder",
+      "de_DE":"Ordner kopieren, verschieben oder löschen",
+      "fr_FR":"Copier, déplacer ou supprimer le dossier",
+      "ja_JP":"フォルダーをコピー、移動、または削除",
+      "nl_NL":"De map kopiëren, verplaatsen of verwijderen"
+    },
+    "COPY_": {
+      "en_US":"Copy",
+      "de_DE":"Kopieren",
+      "fr_FR":"Copier",
+      "ja_JP":"コピー",
+      "nl_NL":"Kopiëren"
+    },
+    "MOVE_": {
+      "en_US":"Move",
+      "de_DE":"Verschieben",
+      "fr_FR":"Déplacer",
+      "ja_JP":"移動",
+      "nl_NL":"Verplaatsen"
+    },
+    "DELETE_": {
+      "en_US":"Delete",
+      "de_DE":"Löschen",
+      "fr_FR":"Supprimer",
+      "ja_JP":"削除",
+      "nl_NL":"Verwijderen"
+    },
+    "TARGET_FOLDER_": {
+      "en_US":"Target folder",
+      "de_DE":"Zielordner",
+      "fr_FR":"Dossier cible",
+      "ja_JP":"ターゲットフォルダー",
+      "nl_NL":"Doelmap"
+    },
+    "RUN_": {
+      "en_US":"Run",
+      "de_DE":"Ausführen",
+      "fr_FR":"Exécuter",
+      "ja_JP":"実行",
+      "nl_NL":"Uitvoeren"
+    },
+    "FILES_PROCESSED_": {
+      "en_US":"Files processed",
+      "de_DE":"Verarbeitete Dateien",
+      "fr_FR":"Fichiers traités",
+      "ja_JP":"処理されたファイル",
+      "nl_NL":"Verwerkte bestanden"
+    },
+    "FILES_SUBMITTED_": {
+      "en_US":"Files submitted",
+      "de_DE":"Übermittelte Dateien",
+      "fr_FR":"Fichiers soumis",
+      "ja_JP":"サブミットされたファイル",
+      "nl_NL":"Ingediende bestanden"
+    },
+    "OPERATION_CANCELLED_": {
+      "en_US":"The operation was cancelled",
+      "de_DE":"Der Vorgang wurde abgebrochen",
+      "fr_FR":"L'opération a été annulée",
+      "ja_JP":"操作はキャンセルされました",
+      "nl_NL":"De bewerking is geannuleerd"
     }
   };
 
   sync.Translation.addTranslations(translations);
 
   var WEBDAV_LOGOUT_ACTION_ID = 'Webdav/Logout';
+  var WEBDAV_PREFIX = 'webdav-';
+  var P4_DRAFT_MODE_ACTION_ID = 'Perforce/DraftMode';
+  var P4_SUBMIT_DRAFT_ACTION_ID = 'Perforce/SubmitDraft';
+  var P4_HISTORY_ACTION_ID = 'Perforce/History';
+
+  /**
+   * Removes the prefix added by the file browser, the servlets expect plain p4 URLs.
+   *
+   * @param {string} url The URL, with or without the webdav- prefix.
+   * @return {string} The p4 URL.
+   */
+  function stripWebdavPrefix(url) {
+    return url.indexOf(WEBDAV_PREFIX) == 0 ? url.substring(WEBDAV_PREFIX.length) : url;
+  }
 
   /**
    * Login the user and call this callback at the end.
@@ -116,6 +249,8 @@
   function login(serverUrl, authenticated) {
   console.log("login", serverUrl);
     //serverUrl = fileBrowser.processURL(serverUrl);
+    // the credentials are stored for the Perforce server, not for the browser URL.
+    serverUrl = stripWebdavPrefix(serverUrl);
 
     // pop-up an authentication window,
     if (!loginDialog_) {
@@ -186,10 +321,16 @@
       goog.events.listenOnce(editor, sync.api.Editor.EventTypes.ACTIONS_LOADED, function(e) {
         this.logoutAction = new LogOutAction(editor);
         editor.getActionsManager().registerAction(WEBDAV_LOGOUT_ACTION_ID, this.logoutAction);
+        editor.getActionsManager().registerAction(P4_DRAFT_MODE_ACTION_ID, new DraftModeAction(editor));
+        editor.getActionsManager().registerAction(P4_SUBMIT_DRAFT_ACTION_ID, new SubmitDraftAction(editor));
+        editor.getActionsManager().registerAction(P4_HISTORY_ACTION_ID, new HistoryAction(editor));
         var toolbar = e.actionsConfiguration.toolbars[0];
 
         var moreMenu = toolbar.children[toolbar.children.length - 1];
         moreMenu.children.push(
+          {id: P4_DRAFT_MODE_ACTION_ID, type: "action"},
+          {id: P4_SUBMIT_DRAFT_ACTION_ID, type: "action"},
+          {id: P4_HISTORY_ACTION_ID, type: "action"},
           {id: WEBDAV_LOGOUT_ACTION_ID, type: "action"}
         );
       });
@@ -277,6 +418,7 @@
             this.dialog.hide();
 
             localStorage.removeItem('webdav.latestUrl');
+            urlInfoCache.clear();
             localStorage.removeItem('webdav.latestRootUrl');
             localStorage.removeItem('webdav.user');
 
@@ -304,6 +446,167 @@
     return tr(msgs.LOGOUT_);
   };
 
+  /**
+   * Toggles the draft mode in which saves are shelved instead of submitted.
+   *
+   * @constructor
+   */
+  function DraftModeAction (editor) {
+    this.editor = editor;
+    this.draftMode = localStorage.getItem('perforce.draftMode') === 'true';
+    // make sure the server side session agrees with the stored preference.
+    this.sendDraftMode_();
+  }
+  goog.inherits(DraftModeAction, sync.actions.AbstractAction);
+
+  /**
+   * Sends the current draft mode to the server.
+   *
+   * @private
+   */
+  DraftModeAction.prototype.sendDraftMode_ = function() {
+    goog.net.XhrIo.send(
+      '../plugins-dispatcher/p4draft?action=' + (this.draftMode ? 'enable' : 'disable'),
+      function () {},
+      'POST');
+  };
+
+  /** @override */
+  DraftModeAction.prototype.actionPerformed = function(callback) {
+    this.draftMode = !this.draftMode;
+    localStorage.setItem('perforce.draftMode', this.draftMode);
+    this.sendDraftMode_();
+    callback && callback();
+  };
+
+  /** @override */
+  DraftModeAction.prototype.getDisplayName = function() {
+    return tr(msgs.DRAFT_MODE_) + (this.draftMode ? ' \u2713' : '');
+  };
+
+  /**
+   * Submits the draft shelved by the user as a single revision.
+   *
+   * @constructor
+   */
+  function SubmitDraftAction (editor) {
+    this.editor = editor;
+  }
+  goog.inherits(SubmitDraftAction, sync.actions.AbstractAction);
+
+  /** @override */
+  SubmitDraftAction.prototype.actionPerformed = function(callback) {
+    var url = this.editor.getUrl();
+    var submit = goog.bind(function () {
+      goog.net.XhrIo.send(
+        '../plugins-dispatcher/p4draft',
+        goog.bind(function (e) {
+          var status = e.target.getStatus();
+          if (status == 401) {
+            login(url, submit);
+          } else if (status != 200) {
+            workspace.getNotificationManager().showError(tr(msgs.CANNOT_SUBMIT_DRAFT_));
+          }
+          callback && callback();
+        }, this),
+        'POST',
+        goog.Uri.QueryData.createFromMap(new goog.structs.Map({
+          action: 'commit',
+          url: url
+        })).toString()
+      );
+    }, this);
+
+    // save first so that the shelf holds the latest content.
+    if (this.editor.isDirty()) {
+      this.editor.getActionsManager().getActionById('Author/Save').actionPerformed(submit);
+    } else {
+      submit();
+    }
+  };
+
+  /** @override */
+  SubmitDraftAction.prototype.getDisplayName = function() {
+    return tr(msgs.SUBMIT_DRAFT_);
+  };
+
+  /**
+   * Shows the revisions of the current document, one page at a time.
+   *
+   * @constructor
+   */
+  function HistoryAction (editor) {
+    this.editor = editor;
+  }
+  goog.inherits(HistoryAction, sync.actions.AbstractAction);
+
+  /** @override */
+  HistoryAction.prototype.actionPerformed = function(callback) {
+    if (!this.dialog) {
+      this.dialog = workspace.createDialog();
+      this.dialog.setTitle(tr(msgs.HISTORY_));
+      this.dialog.setButtonConfiguration(sync.api.Dialog.ButtonConfiguration.OK);
+      this.dialog.setPreferredSize(500, 500);
+    }
+    var element = this.dialog.getElement();
+    element.innerHTML = '<div class="p4-history"></div>';
+    this.loadPage_(element.querySelector('.p4-history'), 0);
+    this.dialog.show();
+    callback && callback();
+  };
+
+  /**
+   * Loads and renders a page of revisions.
+   *
+   * @param {Element} container The element listing the revisions.
+   * @param {number} before The page starts before this revision, 0 for the head revision.
+   *
+   * @private
+   */
+  HistoryAction.prototype.loadPage_ = function(container, before) {
+    var url = this.editor.getUrl();
+    goog.net.XhrIo.send(
+      '../plugins-dispatcher/p4history?url=' + encodeURIComponent(url) + (before ? '&before=' + before : ''),
+      goog.bind(function (e) {
+        var request = /** {@type goog.net.XhrIo} */ (e.target);
+        var status = request.getStatus();
+        if (status == 401) {
+          login(url, goog.bind(this.loadPage_, this, container, before));
+          return;
+        } else if (status != 200) {
+          container.appendChild(goog.dom.createDom('div', 'p4-history-error', tr(msgs.CANNOT_OPEN_URL_)));
+          return;
+        }
+
+        var page = request.getResponseJson();
+        for (var i = 0; i < page.revisions.length; i++) {
+          var revision = page.revisions[i];
+          var link = goog.dom.createDom('a', {
+              className: 'p4-history-revision',
+              target: '_blank',
+              href: window.location.pathname + '?url=' + encodeURIComponent(revision.url)
+            },
+            '#' + revision.rev + ' @' + revision.change + ' ' + revision.action + ' ' + revision.user + ' ' +
+              new Date(revision.date).toLocaleString());
+          container.appendChild(goog.dom.createDom('div', 'p4-history-entry',
+            link, goog.dom.createDom('div', 'p4-history-description', revision.description || '')));
+        }
+        if (page.next) {
+          var more = goog.dom.createDom('div', 'p4-history-more', tr(msgs.LOAD_MORE_));
+          goog.events.listenOnce(more, goog.events.EventType.CLICK, goog.bind(function() {
+            goog.dom.removeNode(more);
+            this.loadPage_(container, page.next);
+          }, this));
+          container.appendChild(more);
+        }
+      }, this));
+  };
+
+  /** @override */
+  HistoryAction.prototype.getDisplayName = function() {
+    return tr(msgs.HISTORY_);
+  };
+
   /**
    * Webdav url chooser.
    *
@@ -332,6 +635,9 @@
     }
     /** Declare a global method to register an enforced URL */
     window.addEnforcedWebdavUrl = goog.bind(this.addEnforcedUrl, this);
+    /** Declare global methods to copy, move or delete a folder, used by the folder actions dialog */
+    window.perforceBulkOperation = goog.bind(this.runBulkOperation, this);
+    window.perforceCancelBulkOperation = goog.bind(this.cancelBulkOperation, this);
 
     //  Wait for other plugins javscript to run and set variabled.
     setTimeout(goog.bind(function(){
@@ -399,6 +705,8 @@
         content += '<div class="webdav-domain-edit"></div>';
       }
       content += '</div>';
+      content += '<input class="p4-search-input" type="search" placeholder="' + tr(msgs.SEARCH_) + '"/>';
+      content += '<div class="p4-bulk-button" title="' + tr(msgs.FOLDER_ACTIONS_) + '">' + tr(msgs.FOLDER_ACTIONS_) + '</div>';
       element.innerHTML = content;
       var button = element.querySelector('.webdav-domain-edit');
       if(button) {
@@ -406,6 +714,17 @@
         goog.events.listen(button, goog.events.EventType.CLICK,
           goog.bind(this.switchToRepoConfig, this, element))
       }
+      var searchInput = element.querySelector('.p4-search-input');
+      goog.events.listen(searchInput, goog.events.EventType.KEYDOWN, goog.bind(function(e) {
+        if (e.keyCode == goog.events.KeyCodes.ENTER) {
+          e.preventDefault();
+          this.searchFolder_(this.getCurrentFolderUrl(), searchInput.value.trim());
+        }
+      }, this));
+      goog.events.listen(element.querySelector('.p4-bulk-button'), goog.events.EventType.CLICK,
+        goog.bind(function() {
+          this.showBulkDialog_(this.getCurrentFolderUrl());
+        }, this));
     }
     this.dialog.setPreferredSize(null, 700);
   };
@@ -545,6 +864,372 @@
   };
 
 
+  /**
+   * Copies, moves or deletes a depot folder in a single changelist on the server.
+   *
+   * @param {string} action One of 'copy', 'move' or 'delete'.
+   * @param {string} url The URL of the source folder.
+   * @param {string=} targetUrl The URL of the target folder, not needed for 'delete'.
+   * @param {function(Object)=} onProgress Called with the progress reported by the server:
+   *   id (to pass to cancelBulkOperation), status (running, done, error or cancelled), ticks,
+   *   file, submitted and message.
+   */
+  PerforceFileBrowser.prototype.runBulkOperation = function(action, url, targetUrl, onProgress) {
+    onProgress = onProgress || function() {};
+    url = stripWebdavPrefix(url);
+    targetUrl = targetUrl && stripWebdavPrefix(targetUrl);
+    goog.net.XhrIo.send(
+      '../plugins-dispatcher/p4bulk',
+      goog.bind(function (e) {
+        var request = /** {@type goog.net.XhrIo} */ (e.target);
+        var status = request.getStatus();
+        if (status == 200) {
+          this.pollBulkOperation_(request.getResponseJson().id, onProgress);
+        } else if (status == 401) {
+          login(url, goog.bind(this.runBulkOperation, this, action, url, targetUrl, onProgress));
+        } else {
+          onProgress({status: 'error'});
+          this.showErrorMessage(tr(msgs.BULK_OPERATION_FAILED_));
+        }
+      }, this),
+      'POST',
+      goog.Uri.QueryData.createFromMap(new goog.structs.Map({
+        action: action,
+        url: url,
+        target: targetUrl || ''
+      })).toString()
+    );
+  };
+
+  /**
+   * Polls the progress of a bulk operation until it finishes.
+   *
+   * @param {string} id The id of the operation.
+   * @param {function(Object)} onProgress The progress callback.
+   *
+   * @private
+   */
+  PerforceFileBrowser.prototype.pollBulkOperation_ = function(id, onProgress) {
+    goog.net.XhrIo.send(
+      '../plugins-dispatcher/p4bulk?id=' + encodeURIComponent(id),
+      goog.bind(function (e) {
+        var request = /** {@type goog.net.XhrIo} */ (e.target);
+        if (request.getStatus() != 200) {
+          onProgress({id: id, status: 'error'});
+          this.showErrorMessage(tr(msgs.BULK_OPERATION_FAILED_));
+          return;
+        }
+        var progress = request.getResponseJson();
+        progress.id = id;
+        onProgress(progress);
+        if (progress.status == 'running') {
+          setTimeout(goog.bind(this.pollBulkOperation_, this, id, onProgress), 500);
+        } else if (progress.status == 'error') {
+          this.showErrorMessage(tr(msgs.BULK_OPERATION_FAILED_) + ': ' + progress.message);
+        } else {
+          this.refresh();
+        }
+      }, this));
+  };
+
+  /**
+   * Stops a bulk operation, its progress is reported until it actually ends.
+   *
+   * @param {string} id The id of the operation.
+   */
+  PerforceFileBrowser.prototype.cancelBulkOperation = function(id) {
+    goog.net.XhrIo.send(
+      '../plugins-dispatcher/p4bulk',
+      null,
+      'POST',
+      goog.Uri.QueryData.createFromMap(new goog.structs.Map({
+        action: 'cancel',
+        id: id
+      })).toString()
+    );
+  };
+
+  /**
+   * Shows a dialog to copy, move or delete a folder, with the progress of the operation
+   * and a button to cancel it.
+   *
+   * @param {string} url The URL of the folder.
+   *
+   * @private
+   */
+  PerforceFileBrowser.prototype.showBulkDialog_ = function(url) {
+    if (!this.bulkDialog_) {
+      this.bulkDialog_ = workspace.createDialog();
+      this.bulkDialog_.setTitle(tr(msgs.FOLDER_ACTIONS_));
+      this.bulkDialog_.setButtonConfiguration([{key: 'ok', caption: tr(msgs.RUN_)}, {key: 'cancel', caption: tr(msgs.CANCEL_)}]);
+      this.bulkDialog_.setPreferredSize(500, null);
+    }
+    var element = this.bulkDialog_.getElement();
+    element.innerHTML =
+      '<div class="p4-bulk-dialog">' +
+      '<select class="p4-bulk-action">' +
+        '<option value="copy">' + tr(msgs.COPY_) + '</option>' +
+        '<option value="move">' + tr(msgs.MOVE_) + '</option>' +
+        '<option value="delete">' + tr(msgs.DELETE_) + '</option>' +
+      '</select>' +
+      '<label>' + tr(msgs.TARGET_FOLDER_) + ': <input class="p4-bulk-target" type="text" autocorrect="off" autocapitalize="none"/></label>' +
+      '<div class="p4-bulk-progress"></div>' +
+      '</div>';
+    var actionSelect = element.querySelector('.p4-bulk-action');
+    var targetInput = element.querySelector('.p4-bulk-target');
+    var progressElement = element.querySelector('.p4-bulk-progress');
+    targetInput.value = url;
+    goog.events.listen(actionSelect, goog.events.EventType.CHANGE, function() {
+      targetInput.disabled = actionSelect.value == 'delete';
+    });
+
+    // idle, running or finished.
+    var state = 'idle';
+    var operationId = null;
+    var cancelRequested = false;
+    var renderProgress = goog.bind(function(progress) {
+      if (progress.id) {
+        operationId = progress.id;
+        if (cancelRequested && state == 'running') {
+          this.cancelBulkOperation(operationId);
+          cancelRequested = false;
+        }
+      }
+      if (progress.status == 'running') {
+        progressElement.textContent = tr(msgs.FILES_PROCESSED_) + ': ' + progress.ticks +
+          (progress.file ? ' - ' + progress.file : '');
+        return;
+      }
+
+      state = 'finished';
+      if (progress.status == 'done') {
+        progressElement.textContent = tr(msgs.FILES_SUBMITTED_) + ': ' + progress.submitted;
+      } else if (progress.status == 'cancelled') {
+        progressElement.textContent = tr(msgs.OPERATION_CANCELLED_);
+      } else {
+        progressElement.textContent = tr(msgs.BULK_OPERATION_FAILED_) +
+          (progress.message ? ': ' + progress.message : '');
+      }
+    }, this);
+
+    this.bulkDialog_.onSelect(goog.bind(function(key, e) {
+      if (key == 'ok') {
+        if (state == 'finished') {
+          return;
+        }
+        // the dialog stays open to show the progress.
+        e.preventDefault();
+        if (state == 'idle') {
+          state = 'running';
+          actionSelect.disabled = true;
+          targetInput.disabled = true;
+          this.runBulkOperation(actionSelect.value, url, targetInput.value.trim(), renderProgress);
+        }
+      } else if (state == 'running') {
+        // the dialog stays open until the server reports that the operation stopped.
+        e.preventDefault();
+        if (operationId) {
+          this.cancelBulkOperation(operationId);
+        } else {
+          cancelRequested = true;
+        }
+      }
+    }, this));
+    this.bulkDialog_.show();
+  };
+
+  /**
+   * Searches the folder by file name and content and renders the results as
+   * they are streamed by the server.
+   *
+   * @param {string} url The URL of the folder to search.
+   * @param {string} query The searched string.
+   *
+   * @private
+   */
+  PerforceFileBrowser.prototype.searchFolder_ = function(url, query) {
+    if (this.searchRequest_) {
+      this.searchRequest_.abort();
+      this.searchRequest_ = null;
+    }
+
+    var dialogElement = this.dialog.getElement();
+    var resultsElement = dialogElement.querySelector('.p4-search-results');
+    if (!resultsElement) {
+      resultsElement = goog.dom.createDom('div', 'p4-search-results');
+      dialogElement.insertBefore(resultsElement, dialogElement.firstChild);
+    }
+    goog.dom.removeChildren(resultsElement);
+    if (!query) {
+      return;
+    }
+
+    // the depot paths in the results are relative to the server URL.
+    var serverUrl = url.match(/^(.*?:\/\/[^\/]+)\/\//)[1];
+    var resultsCount = 0;
+    var processed = 0;
+    var xhr = new XMLHttpRequest();
+    var renderResults = goog.bind(function() {
+      // each complete line of the response is a result.
+      var text = xhr.responseText;
+      var end;
+      while ((end = text.indexOf('\n', processed)) != -1) {
+        var result = JSON.parse(text.substring(processed, end));
+        processed = end + 1;
+        resultsCount++;
+
+        var fileUrl = serverUrl + result.path;
+        var resultElement = goog.dom.createDom('div', 'p4-search-result',
+          goog.dom.createDom('div', 'p4-search-result-path', result.path + (result.line ? ':' + result.line : '')));
+        if (result.text) {
+          resultElement.appendChild(goog.dom.createDom('div', 'p4-search-result-text', result.text));
+        }
+        goog.events.listen(resultElement, goog.events.EventType.CLICK,
+          goog.bind(this.openUrl, this, fileUrl, true, null));
+        resultsElement.appendChild(resultElement);
+      }
+    }, this);
+
+    xhr.open('GET', '../plugins-dispatcher/p4search?url=' + encodeURIComponent(stripWebdavPrefix(url)) +
+      '&q=' + encodeURIComponent(query));
+    xhr.onprogress = renderResults;
+    xhr.onload = goog.bind(function() {
+      this.searchRequest_ = null;
+      if (xhr.status == 200) {
+        renderResults();
+        if (resultsCount == 0) {
+          resultsElement.appendChild(goog.dom.createDom('div', 'p4-search-result', tr(msgs.NO_RESULTS_)));
+        }
+      } else if (xhr.status == 401) {
+        login(url, goog.bind(this.searchFolder_, this, url, query));
+      } else {
+        this.showErrorMessage(tr(msgs.CANNOT_OPEN_URL_));
+      }
+    }, this);
+    xhr.send();
+    this.searchRequest_ = xhr;
+  };
+
+  /**
+   * Cache of the URL info (type and root URL) received from the server, keyed by URL.
+   * The entries are validated with the ETag sent by the server, the number of the
+   * latest change submitted under the URL. The folder listings of the browser are
+   * requested by the editor itself and are not cached.
+   *
+   * @param {number} maxSize The maximum number of entries, the least recently used
+   *   ones are evicted.
+   * @constructor
+   */
+  var UrlInfoCache = function(maxSize) {
+    this.maxSize = maxSize;
+    /** @type {Object<string, {etag: string, info: Object}>} URL -> entry, in access order. */
+    this.entries = {};
+    this.urls = [];
+    try {
+      var stored = JSON.parse(localStorage.getItem(UrlInfoCache.STORAGE_KEY_));
+      if (stored) {
+        this.entries = stored.entries;
+        this.urls = stored.urls;
+      }
+    } catch (e) {
+      // a corrupted cache is just dropped.
+    }
+    // the cache of the previous versions, which also held the folder listings.
+    localStorage.removeItem('perforce.urlInfoCache');
+  };
+
+  /** @private */
+  UrlInfoCache.STORAGE_KEY_ = 'perforce.urlInfoCache';
+
+  /**
+   * @param {string} url The URL.
+   * @return {{etag: string, info: Object}} the cached entry, if any.
+   */
+  UrlInfoCache.prototype.get = function(url) {
+    var entry = this.entries[url];
+    if (entry) {
+      this.touch_(url);
+    }
+    return entry;
+  };
+
+  /**
+   * @param {string} url The URL.
+   * @param {string} etag The ETag sent by the server.
+   * @param {Object} info The URL info.
+   */
+  UrlInfoCache.prototype.put = function(url, etag, info) {
+    this.entries[url] = {etag: etag, info: info};
+    this.touch_(url);
+    while (this.urls.length > this.maxSize) {
+      delete this.entries[this.urls.shift()];
+    }
+    this.save_();
+  };
+
+  /**
+   * Empties the cache.
+   */
+  UrlInfoCache.prototype.clear = function() {
+    this.entries = {};
+    this.urls = [];
+    localStorage.removeItem(UrlInfoCache.STORAGE_KEY_);
+  };
+
+  /**
+   * Marks the URL as the most recently used.
+   *
+   * @private
+   */
+  UrlInfoCache.prototype.touch_ = function(url) {
+    goog.array.remove(this.urls, url);
+    this.urls.push(url);
+  };
+
+  /** @private */
+  UrlInfoCache.prototype.save_ = function() {
+    try {
+      localStorage.setItem(UrlInfoCache.STORAGE_KEY_, JSON.stringify({entries: this.entries, urls: this.urls}));
+    } catch (e) {
+      // quota exceeded, keep the cache in memory only.
+    }
+  };
+
+  var urlInfoCache = new UrlInfoCache(200);
+
+  /**
+   * Requests the URL info from the server, revalidating the cached version if there is one.
+   *
+   * @param {string} url The URL.
+   * @param {function(goog.net.XhrIo, Object)} callback Called with the request and
+   *   the info, which is null unless the request succeeded.
+   *
+   * @private
+   */
+  PerforceFileBrowser.prototype.fetchUrlInfo_ = function(url, callback) {
+    var cached = urlInfoCache.get(url);
+    var headers = cached ? {'If-None-Match': cached.etag} : {};
+    // the server expects the Perforce URL, without the prefix added by processURL.
+    var p4Url = stripWebdavPrefix(url);
+    goog.net.XhrIo.send(
+      '../plugins-dispatcher/p4list?url=' + encodeURIComponent(p4Url),
+      function(e) {
+        var request = /** {@type goog.net.XhrIo} */ (e.target);
+        var status = request.getStatus();
+        var info = null;
+        if (status == 304 && cached) {
+          info = cached.info;
+        } else if (status == 200) {
+          info = request.getResponseJson();
+          urlInfoCache.put(url, request.getResponseHeader('ETag'), info);
+        }
+        callback(request, info);
+      },
+      'GET',
+      null,
+      headers);
+  };
+
   /**
    * Request the URL info from the server.
    *
@@ -553,10 +1238,7 @@
    * @private
    */
   PerforceFileBrowser.prototype.requestUrlInfo_ = function (url, callback) {
-    console.log('Old method called ', url);
-    goog.net.XhrIo.send(
-      '../plugins-dispatcher/webdav-url-info?url=' + encodeURIComponent(url),
-      goog.bind(this.handleUrlInfoReceived, this, url, callback));
+    this.fetchUrlInfo_(url, goog.bind(this.handleUrlInfoReceived, this, url, callback));
   };
 
   /**
@@ -565,13 +1247,12 @@
    * @param {string} url The URL about which we requested info.
    * @param {function} callback the callback method.
    *
-   * @param {goog.events.Event} e The XHR event.
+   * @param {goog.net.XhrIo} request The request.
+   * @param {Object} info The URL info, null if the request failed.
    */
-  PerforceFileBrowser.prototype.handleUrlInfoReceived = function (url, callback, e) {
-    var request = /** {@type goog.net.XhrIo} */ (e.target);
+  PerforceFileBrowser.prototype.handleUrlInfoReceived = function (url, callback, request, info) {
     var status = request.getStatus();
-    if (status == 200) {
-      var info = request.getResponseJson();
+    if (info) {
       callback(url, info);
     } else if (status == 401) {
       login(url, goog.bind(this.requestUrlInfo_, this, url, callback));